@@ -12,6 +12,15 @@
 
 bool enableDevMode = false;
 
+// Id of the last handled command, "<ms>-<seq>" of the server stream entry
+struct CommandId
+{
+  uint64_t ms;
+  uint64_t seq;
+};
+
+CommandId lastCommandId = {0, 0};
+
 float readVWC(int pin);
 void handleWebSocketEvent(WStype_t type, uint8_t *payload, size_t lenght);
 String handleSensorSampling();
@@ -24,6 +33,10 @@ const char* getValueFromConfig(const char* value);
 void handleWifiEvents(WiFiEvent_t event);
 bool connectToWiFi(const char* &ssid, const char* &password, unsigned long timeoutMs = 10000);
 void handleCredentialsUpdate(const String &json);
+bool parseCommandId(const String &text, CommandId &id);
+bool isNewCommand(const CommandId &id);
+void loadLastCommandId();
+void saveLastCommandId(const CommandId &id);
 
 constexpr const char* BLE_SERVICE_UUID = "53020f00-319c-4d97-a2b1-9e706baba77a";
 constexpr const char* BLE_CHARACTERISTIC_UUID = "f87709b3-63a7-4605-9bb5-73c383462296";
@@ -94,6 +107,8 @@ void setup()
       ESP.restart();
     }
 
+    loadLastCommandId();
+
     if(!luxMeter.begin(BH1750::CONTINUOUS_HIGH_RES_MODE_2))
     {
         ESP.restart();
@@ -170,9 +185,26 @@ void handleWebSocketEvent(WStype_t type, uint8_t *payload, size_t length)
         DeserializationError error = deserializeJson(doc, jsonResponse);
       
         String commandType = doc["type"];
+        String commandId = doc["id"] | "";
 
         Serial.println(commandType);
 
+        if (commandId.length() > 0)
+        {
+          // commands are redelivered until acknowledged, so a repeated one is only acknowledged again
+          wsClient.sendTXT(("{\"ack\": \"" + commandId + "\"}").c_str());
+
+          // ids grow with every command, so any id up to the last handled one was handled before
+          CommandId id;
+          if (!parseCommandId(commandId, id) || !isNewCommand(id))
+          {
+            break;
+          }
+
+          lastCommandId = id;
+          saveLastCommandId(id);
+        }
+
         if (commandType.equalsIgnoreCase("WATERING"))
         {
           handleAddingWater(doc["value"]);
@@ -328,6 +360,48 @@ const char* getWifiPassword()
   return getValueFromConfig(WIFI_PASSWORD);
 }
 
+bool parseCommandId(const String &text, CommandId &id)
+{
+  int separator = text.indexOf('-');
+  if (separator <= 0 || separator == static_cast<int>(text.length()) - 1)
+    return false;
+
+  char* end;
+  id.ms = strtoull(text.c_str(), &end, 10);
+  if (end != text.c_str() + separator)
+    return false;
+
+  id.seq = strtoull(text.c_str() + separator + 1, &end, 10);
+  return *end == '\0';
+}
+
+bool isNewCommand(const CommandId &id)
+{
+  return id.ms > lastCommandId.ms || (id.ms == lastCommandId.ms && id.seq > lastCommandId.seq);
+}
+
+void loadLastCommandId()
+{
+  Preferences prefs;
+  if (!prefs.begin("cmd", true)) {
+    prefs.end();
+    return;
+  }
+
+  lastCommandId.ms = prefs.getULong64("ms", 0);
+  lastCommandId.seq = prefs.getULong64("seq", 0);
+  prefs.end();
+}
+
+void saveLastCommandId(const CommandId &id)
+{
+  Preferences prefs;
+  prefs.begin("cmd", false);
+  prefs.putULong64("ms", id.ms);
+  prefs.putULong64("seq", id.seq);
+  prefs.end();
+}
+
 const char* getValueFromConfig(const char* key)
 {
   if (key != WIFI_SSID && key != WIFI_PASSWORD && key != API_KEY)
@@ -23,6 +23,21 @@ import DevicesCard from './devices-card.jsx';
 import EspConfiguration from './esp-configuration.jsx';
 import EditFloraLink from './edit-floralink.jsx';
 
+const SENSOR_FIELDS = {
+  ENV_HUMIDITY: 'humidity',
+  ENV_TEMPERATURE: 'temperature',
+  SOIL_MOISTURE: 'soilMoisture',
+  LIGHT_LUX: 'lightLux',
+};
+
+// Keeps the readings already received over the WebSocket when the device list is (re)fetched
+function mergeFetchedDevices(fetchedDevices, prevDevices) {
+  return fetchedDevices.map((device) => ({
+    ...prevDevices.find((prevDevice) => prevDevice.floraLinkId === device.floraLinkId),
+    ...device,
+  }));
+}
+
 export default function DevicesPage({ setModal }) {
   const { isLogged } = use(UserContext);
   const [devices, setDevices] = useState([]);
@@ -31,27 +46,40 @@ export default function DevicesPage({ setModal }) {
 
   useFloraWebSocket({
     onMessage: (data) => {
-      if (data.sensorId && data.sensorData) {
-        setDevices((prevDevices) => {
-          const idx = prevDevices.findIndex((device) => device.floraLinkId === data.sensorId);
-          const updatedDevice = {
-            floraLinkId: data.sensorId,
-            humidity: data.sensorData.find((d) => d.type === 'ENV_HUMIDITY')?.value,
-            temperature: data.sensorData.find((d) => d.type === 'ENV_TEMPERATURE')?.value,
-            soilMoisture: data.sensorData.find((d) => d.type === 'SOIL_MOISTURE')?.value,
-            lightLux: data.sensorData.find((d) => d.type === 'LIGHT_LUX')?.value,
-          };
+      // Readings arrive coalesced: one frame holds the latest readings of every device that reported
+      const readings = (Array.isArray(data) ? data : [data]).filter(
+        (reading) => reading.sensorId && reading.sensorData
+      );
+
+      if (readings.length === 0) {
+        return;
+      }
+
+      setDevices((prevDevices) => {
+        let nextDevices = prevDevices;
+
+        for (const reading of readings) {
+          const idx = nextDevices.findIndex((device) => device.floraLinkId === reading.sensorId);
+          // Updates only carry the sensors that changed, keep the last values of the others
+          const updatedDevice = { floraLinkId: reading.sensorId };
+          for (const { type, value } of reading.sensorData) {
+            if (SENSOR_FIELDS[type]) {
+              updatedDevice[SENSOR_FIELDS[type]] = value;
+            }
+          }
           if (idx !== -1) {
             // Aktualizuj istniejące urządzenie
-            return prevDevices.map((device, i) =>
+            nextDevices = nextDevices.map((device, i) =>
               i === idx ? { ...device, ...updatedDevice } : device
             );
           } else {
             // Dodaj nowe urządzenie
-            return [...prevDevices, updatedDevice];
+            nextDevices = [...nextDevices, updatedDevice];
           }
-        });
-      }
+        }
+
+        return nextDevices;
+      });
     },
   });
 
@@ -70,7 +98,7 @@ export default function DevicesPage({ setModal }) {
     const fetchDevices = async () => {
       try {
         const response = await axios.get('/api/v1/get-floralinks', { withCredentials: true });
-        setDevices(response.data);
+        setDevices((prevDevices) => mergeFetchedDevices(response.data, prevDevices));
         // eslint-disable-next-line no-unused-vars
       } catch (error) {
         console.error('Failed to fetch devices');
@@ -94,7 +122,7 @@ export default function DevicesPage({ setModal }) {
     const fetchDevices = async () => {
       try {
         const response = await axios.get('/api/v1/get-floralinks', { withCredentials: true });
-        setDevices(response.data);
+        setDevices((prevDevices) => mergeFetchedDevices(response.data, prevDevices));
         // eslint-disable-next-line no-unused-vars
       } catch (error) {
         console.error('Failed to fetch devices');
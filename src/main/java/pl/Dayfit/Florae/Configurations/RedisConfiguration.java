@@ -2,6 +2,7 @@ package pl.Dayfit.Florae.Configurations;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -23,6 +24,8 @@ import java.time.Duration;
  * The class defines beans required for Redis functionality:
  * - RedisCacheManager: Configures the cache manager for caching with custom settings such as TTL and value serialization.
  * - RedisTemplate: Configures a template for Redis operations with customized serializers for keys, values, hashes, and hash values.
+ * - RedisMessageListenerContainer: Hands messages to the listeners on the connection thread; listeners must
+ *   only queue them (see {@code ChannelMessagingHandler}).
  * <p>
  * These beans enable the application to efficiently interact with the Redis data store and leverage caching capabilities.
  */
@@ -62,6 +65,7 @@ public class RedisConfiguration {
     {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(new SyncTaskExecutor());
 
         return container;
     }
@@ -2,22 +2,29 @@ package pl.Dayfit.Florae.Controllers;
 
 import lombok.RequiredArgsConstructor;
 
+import java.time.Instant;
 import java.util.Map;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.Dayfit.Florae.Auth.UserPrincipal;
 import pl.Dayfit.Florae.DTOs.FloraLinkSetNameDTO;
 import pl.Dayfit.Florae.DTOs.Sensors.EnableBleDTO;
+import pl.Dayfit.Florae.Enums.SensorDataType;
 import pl.Dayfit.Florae.Services.Auth.JWT.FloraeUserCacheService;
 import pl.Dayfit.Florae.Services.FloraLinkCacheService;
 import pl.Dayfit.Florae.Services.FloraLinkService;
+import pl.Dayfit.Florae.Services.PlantsService;
+import pl.Dayfit.Florae.Services.Telemetry.SensorHistoryQueryService;
 
 /**
  * Controller for handling requests related to the FloraLink API, including operations for
- * connecting APIs, uploading sensor data, and retrieving sensor data reports.
+ * connecting APIs, uploading sensor data, and retrieving sensor data reports and history.
  */
 @RestController
 @RequiredArgsConstructor
@@ -25,6 +32,8 @@ public class FloraLinkController {
     private final FloraLinkService floraLinkService;
     private final FloraLinkCacheService floraLinkCacheService;
     private final FloraeUserCacheService floraeUserCacheService;
+    private final PlantsService plantsService;
+    private final SensorHistoryQueryService sensorHistoryQueryService;
 
     @PostMapping("/api/v1/floralink/enable-ble")
     public ResponseEntity<Map<String, String>> sendRequestToEnableBle(@RequestBody EnableBleDTO dto, @AuthenticationPrincipal UserPrincipal userPrincipal)
@@ -46,6 +55,54 @@ public class FloraLinkController {
         return ResponseEntity.ok(floraLinkService.getDailyDataReport((userPrincipal).getUsername()));
     }
 
+    /**
+     * Streams the history of one sensor of a plant, using the finest stored rollup resolution
+     * that fits into the requested number of points
+     * @param plantId the plant identifier
+     * @param type the sensor type label, e.g. SOIL_MOISTURE
+     * @param from inclusive range start (ISO-8601)
+     * @param to exclusive range end (ISO-8601)
+     * @param maxPoints maximum number of points to return
+     * @param userPrincipal User's authentication principal
+     * @return JSON document with the selected resolution and the points of the range
+     */
+    @GetMapping("/api/v1/floralink/get-history")
+    public ResponseEntity<StreamingResponseBody> getHistory(@RequestParam Integer plantId,
+                                                            @RequestParam String type,
+                                                            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                            @RequestParam(defaultValue = "500") int maxPoints,
+                                                            @AuthenticationPrincipal UserPrincipal userPrincipal)
+    {
+        SensorDataType sensorDataType = SensorDataType.fromLabel(type);
+
+        if (sensorDataType == null)
+        {
+            throw new IllegalArgumentException("Unknown sensor type: " + type);
+        }
+
+        if (!from.isBefore(to))
+        {
+            throw new IllegalArgumentException("Range start must be before its end");
+        }
+
+        if (maxPoints <= 0 || maxPoints > SensorHistoryQueryService.MAX_POINTS_LIMIT)
+        {
+            throw new IllegalArgumentException("maxPoints must be between 1 and " + SensorHistoryQueryService.MAX_POINTS_LIMIT);
+        }
+
+        sensorHistoryQueryService.validateRange(from, to, maxPoints);
+
+        if (plantsService.isNotOwner(plantId, userPrincipal.getUsername()))
+        {
+            throw new AccessDeniedException("You are not owner of this plant");
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> sensorHistoryQueryService.streamHistory(plantId, sensorDataType, from, to, maxPoints, outputStream));
+    }
+
     @PutMapping("/api/v1/floralink/set-name")
     public ResponseEntity<?> setFloraLinkName(@RequestBody FloraLinkSetNameDTO floraLinkSetNameDTO, @AuthenticationPrincipal UserPrincipal userPrincipal) throws AccessDeniedException
     {
@@ -1,13 +1,23 @@
 package pl.Dayfit.Florae.DTOs.Sensors.Commands;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import pl.Dayfit.Florae.Enums.CommandType;
 
-@AllArgsConstructor
 @NoArgsConstructor
 @Getter
 public class Command {
+    public Command(CommandType type)
+    {
+        this.type = type;
+    }
+
     protected CommandType type;
+
+    /**
+     * Identifier the device acknowledges the command with, assigned when the command is queued
+     */
+    @Setter
+    protected String id;
 }
@@ -18,4 +18,8 @@ public class DailySensorDataDTO {
     private @NonNull Instant maxValueTimestamp;
 
     private @NonNull Double averageValue;
+
+    private Double p5Value;
+    private Double p50Value;
+    private Double p95Value;
 }
@@ -0,0 +1,16 @@
+package pl.Dayfit.Florae.DTOs.Sensors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import pl.Dayfit.Florae.Enums.SensorAlertType;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorAlertDTO {
+    private Integer sensorId;
+    private String type;
+    private SensorAlertType alert;
+    private double value;
+}
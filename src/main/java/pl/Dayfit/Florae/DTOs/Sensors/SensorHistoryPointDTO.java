@@ -0,0 +1,23 @@
+package pl.Dayfit.Florae.DTOs.Sensors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorHistoryPointDTO {
+    private Instant timestamp;
+
+    private double minValue;
+    private double maxValue;
+    private double averageValue;
+    private double lastValue;
+
+    private long count;
+}
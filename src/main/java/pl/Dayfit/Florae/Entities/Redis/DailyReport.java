@@ -1,19 +1,37 @@
 package pl.Dayfit.Florae.Entities.Redis;
 
-import jakarta.persistence.Id;
 import jakarta.validation.constraints.NotNull;
 import lombok.Getter;
 import lombok.Setter;
-import org.springframework.data.redis.core.RedisHash;
 import pl.Dayfit.Florae.Enums.SensorDataType;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 
-@RedisHash("DailyReport")
+/**
+ * Read model of a plant's daily report, stored in Redis as a flat hash
+ * (see {@link pl.Dayfit.Florae.Repositories.Redis.DailyReportRepository}).
+ * <p>
+ * Readings cover a sliding {@link #WINDOW} kept as a ring of {@link #BUCKETS} hourly buckets per
+ * sensor; the bucket of an hour is reused once it falls out of the window.
+ */
 @Getter
 @Setter
 public class DailyReport {
+    public static final Duration WINDOW = Duration.ofHours(24);
+    public static final Duration BUCKET_SIZE = Duration.ofHours(1);
+    public static final int BUCKETS = (int) (WINDOW.toMillis() / BUCKET_SIZE.toMillis());
+
+    /**
+     * @param timestamp epoch milliseconds
+     * @return the number of the hourly bucket the timestamp falls into
+     */
+    public static long hourOf(long timestamp)
+    {
+        return Math.floorDiv(timestamp, BUCKET_SIZE.toMillis());
+    }
+
     @Getter
     @Setter
     public static class DailyReadings
@@ -30,6 +48,10 @@ public class DailyReport {
 
         private Instant avgInitialTimestamp;
 
+        private Double p5Value;
+        private Double p50Value;
+        private Double p95Value;
+
         private Integer count;
     }
 
@@ -37,7 +59,6 @@ public class DailyReport {
     private String owner;
     @NotNull
     private Integer floraLinkId;
-    @Id
     private String id;
     private Map<SensorDataType, DailyReadings> dailyReadings;
 }
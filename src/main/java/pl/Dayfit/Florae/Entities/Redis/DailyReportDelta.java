@@ -0,0 +1,164 @@
+package pl.Dayfit.Florae.Entities.Redis;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Utils.QuantileSketch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Readings of a single plant accumulated locally since the last flush, grouped into the hourly
+ * buckets of the {@link DailyReport} ring stored in Redis. Not thread-safe; callers synchronize
+ * on the instance.
+ */
+@RequiredArgsConstructor
+public class DailyReportDelta {
+    private static final SensorDataType[] TYPES = SensorDataType.values();
+
+    private final @Getter Integer plantId;
+    private final @Getter Integer floraLinkId;
+    private final @Getter String owner;
+
+    /**
+     * Bucket of the most recent hour per sensor type, indexed by ordinal
+     */
+    private final Readings[] current = new Readings[TYPES.length];
+
+    /**
+     * Buckets of earlier hours, only populated when a delta spans an hour boundary
+     */
+    private final List<Readings> earlier = new ArrayList<>();
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Readings
+    {
+        private final SensorDataType type;
+
+        /**
+         * Hours since the epoch of the bucket
+         */
+        private final long hour;
+
+        private long count;
+        private double sum;
+
+        private double minValue = Double.POSITIVE_INFINITY;
+        private long minTimestamp;
+
+        private double maxValue = Double.NEGATIVE_INFINITY;
+        private long maxTimestamp;
+
+        private final QuantileSketch sketch = new QuantileSketch();
+
+        public void add(double value, long timestamp)
+        {
+            count++;
+            sum += value;
+            sketch.add(value);
+
+            if (value < minValue)
+            {
+                minValue = value;
+                minTimestamp = timestamp;
+            }
+
+            if (value > maxValue)
+            {
+                maxValue = value;
+                maxTimestamp = timestamp;
+            }
+        }
+
+        public void merge(Readings other)
+        {
+            count += other.count;
+            sum += other.sum;
+            sketch.merge(other.sketch);
+
+            if (other.minValue < minValue)
+            {
+                minValue = other.minValue;
+                minTimestamp = other.minTimestamp;
+            }
+
+            if (other.maxValue > maxValue)
+            {
+                maxValue = other.maxValue;
+                maxTimestamp = other.maxTimestamp;
+            }
+        }
+    }
+
+    public void add(SensorDataType type, double value, long timestamp)
+    {
+        bucket(type, DailyReport.hourOf(timestamp)).add(value, timestamp);
+    }
+
+    public void merge(DailyReportDelta other)
+    {
+        other.forEach(readings -> bucket(readings.getType(), readings.getHour()).merge(readings));
+    }
+
+    public void forEach(Consumer<Readings> consumer)
+    {
+        earlier.forEach(consumer);
+
+        for (Readings readings : current)
+        {
+            if (readings != null)
+            {
+                consumer.accept(readings);
+            }
+        }
+    }
+
+    public int size()
+    {
+        int size = earlier.size();
+
+        for (Readings readings : current)
+        {
+            size += readings == null ? 0 : 1;
+        }
+
+        return size;
+    }
+
+    private Readings bucket(SensorDataType type, long hour)
+    {
+        Readings readings = current[type.ordinal()];
+
+        if (readings != null && readings.hour == hour)
+        {
+            return readings;
+        }
+
+        if (readings == null || readings.hour < hour)
+        {
+            if (readings != null)
+            {
+                earlier.add(readings);
+            }
+
+            readings = new Readings(type, hour);
+            current[type.ordinal()] = readings;
+            return readings;
+        }
+
+        for (Readings candidate : earlier)
+        {
+            if (candidate.type == type && candidate.hour == hour)
+            {
+                return candidate;
+            }
+        }
+
+        readings = new Readings(type, hour);
+        earlier.add(readings);
+        return readings;
+    }
+}
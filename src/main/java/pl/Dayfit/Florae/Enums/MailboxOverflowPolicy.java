@@ -0,0 +1,21 @@
+package pl.Dayfit.Florae.Enums;
+
+/**
+ * What an ingest mailbox does with a frame that arrives while it is full.
+ */
+public enum MailboxOverflowPolicy {
+    /**
+     * Discard the oldest queued frame to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new frame
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the new frame and close the session, so the device reconnects
+     */
+    CLOSE_SESSION
+}
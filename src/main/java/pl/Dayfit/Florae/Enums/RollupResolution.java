@@ -0,0 +1,33 @@
+package pl.Dayfit.Florae.Enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Bucket sizes of the pre-aggregated sensor rollups, ordered from the finest to the coarsest.
+ */
+@Getter
+@AllArgsConstructor
+public enum RollupResolution {
+    MINUTE(0, Duration.ofMinutes(1)),
+    HOUR(1, Duration.ofHours(1)),
+    DAY(2, Duration.ofDays(1));
+
+    /**
+     * Identifier stored in the {@code resolution} column
+     */
+    private final int id;
+    private final Duration bucketSize;
+
+    /**
+     * @param timestamp epoch milliseconds
+     * @return start of the bucket containing the timestamp, in epoch milliseconds (UTC aligned)
+     */
+    public long bucketStart(long timestamp)
+    {
+        long size = bucketSize.toMillis();
+        return Math.floorDiv(timestamp, size) * size;
+    }
+}
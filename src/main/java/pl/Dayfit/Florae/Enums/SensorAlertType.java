@@ -0,0 +1,7 @@
+package pl.Dayfit.Florae.Enums;
+
+public enum SensorAlertType {
+    BELOW_MIN,
+    ABOVE_MAX,
+    BACK_IN_RANGE
+}
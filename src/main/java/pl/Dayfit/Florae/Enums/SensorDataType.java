@@ -1,16 +1,61 @@
 package pl.Dayfit.Florae.Enums;
 
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 @AllArgsConstructor
 public enum SensorDataType {
-    ENV_HUMIDITY("ENV_HUMIDITY"),
-    ENV_TEMPERATURE("ENV_TEMPERATURE"),
-    SOIL_MOISTURE("SOIL_MOISTURE"),
-    LIGHT_LUX("LIGHT_LUX");
+    ENV_HUMIDITY("ENV_HUMIDITY", 1),
+    ENV_TEMPERATURE("ENV_TEMPERATURE", 2),
+    SOIL_MOISTURE("SOIL_MOISTURE", 3),
+    LIGHT_LUX("LIGHT_LUX", 4);
+
+    private static final SensorDataType[] BY_ID = new SensorDataType[256];
+
+    static {
+        for (SensorDataType type : values())
+        {
+            BY_ID[type.id] = type;
+        }
+    }
 
     private final String label;
 
+    /**
+     * Numeric identifier used by the binary FloraLink wire protocol, must fit in an unsigned byte
+     */
+    private final @Getter int id;
+
+    /**
+     * Resolves a sensor type by its binary protocol identifier.
+     *
+     * @param id the unsigned byte identifier sent by the device
+     * @return the matching type, or {@code null} if the identifier is unknown
+     */
+    public static SensorDataType fromId(int id)
+    {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
+    /**
+     * Resolves a sensor type by its label without throwing on unknown input.
+     *
+     * @param label the sensor label, e.g. {@code SOIL_MOISTURE}
+     * @return the matching type, or {@code null} if the label is unknown
+     */
+    public static SensorDataType fromLabel(String label)
+    {
+        for (SensorDataType type : BY_ID)
+        {
+            if (type != null && type.label.equals(label))
+            {
+                return type;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public String toString()
     {
@@ -1,10 +1,11 @@
 package pl.Dayfit.Florae.Events;
 
-import org.springframework.security.core.Authentication;
-import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.POJOs.DeviceContext;
 
-import java.util.List;
-
-public record CurrentDataUploadedEvent(List<CurrentSensorDataDTO> data, Authentication authentication,
-                                       pl.Dayfit.Florae.Entities.Plant plant) {
+/**
+ * @param values the readings of the frame indexed by {@link pl.Dayfit.Florae.Enums.SensorDataType#ordinal()},
+ *               {@link Double#NaN} for sensor types the frame did not carry
+ * @param context the device that sent the frame
+ */
+public record CurrentDataUploadedEvent(double[] values, DeviceContext context) {
 }
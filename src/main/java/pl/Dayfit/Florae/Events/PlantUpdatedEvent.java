@@ -0,0 +1,4 @@
+package pl.Dayfit.Florae.Events;
+
+public record PlantUpdatedEvent(Integer plantId) {
+}
@@ -1,63 +1,132 @@
 package pl.Dayfit.Florae.Handlers.Channels;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.POJOs.NodeEnvelope;
+import pl.Dayfit.Florae.Services.WebSockets.SessionOutbox;
 import pl.Dayfit.Florae.Services.WebSockets.SessionService;
+import pl.Dayfit.Florae.Utils.PartitionedExecutor;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Delivers messages of the {@code user.*} and {@code floralink.*} channels to the WebSocket sessions
+ * connected to this node.
+ * <p>
+ * Messages are addressed to the nodes holding the sessions of a channel (see
+ * {@link pl.Dayfit.Florae.Services.WebSockets.FanoutPublisher}): those for this node arrive as
+ * {@link NodeEnvelope}s on its {@code node.{id}} Redis channel, on the Redis connection thread, or are
+ * handed over directly by a local publisher. A message is only queued there, on one of {@code florae.fanout.dispatch-lanes}
+ * lanes of a {@link PartitionedExecutor} chosen by channel name, so the messages of a channel keep
+ * their order while the concurrency stays bounded. Besides the lane meters, the time from receipt to
+ * dispatch is published as {@code florae.fanout.dispatch.latency}.
+ * <p>
+ * On the lane the sessions of a channel are looked up in {@link SessionService} without locking and the message is
+ * queued on the {@link SessionOutbox} of each of them, so the listener thread never waits for a client.
+ * The body is wrapped as is in one {@link TextMessage} shared by all recipients.
+ * Messages for channels with no local session are dropped.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ChannelMessagingHandler implements MessageListener {
+    public static final String USER_CHANNEL_PREFIX = "user.";
+    public static final String FLORALINK_CHANNEL_PREFIX = "floralink.";
+
     private final SessionService sessionService;
+    private final MeterRegistry meterRegistry;
+    private PartitionedExecutor<Delivery> dispatcher;
+    private Timer dispatchLatency;
+
+    @Value("${florae.fanout.dispatch-lanes:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int dispatchLanes;
+
+    @Value("${florae.fanout.dispatch-queue-capacity:4096}")
+    private int dispatchQueueCapacity;
 
-    private void handleMessage(String message, String channel)
+    private record Delivery(String channel, byte[] payload, long receivedAt)
     {
-        String identifier = null;
-        WebSocketSession session = null;
+    }
 
-        if (channel.startsWith("user."))
+    @PostConstruct
+    public void start()
+    {
+        dispatchLatency = Timer.builder("florae.fanout.dispatch.latency").register(meterRegistry);
+        dispatcher = new PartitionedExecutor<>("florae.fanout", dispatchLanes, dispatchQueueCapacity, 64, this::dispatch, meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        dispatcher.close();
+    }
+
+    private void dispatch(List<Delivery> batch)
+    {
+        for (Delivery delivery : batch)
         {
-            identifier = channel.replace("user.", "");
-            session = sessionService.getSessionByUsername(identifier);
+            dispatchLatency.record(System.nanoTime() - delivery.receivedAt(), TimeUnit.NANOSECONDS);
+            handleMessage(delivery.payload(), delivery.channel());
         }
+    }
+
+    private void handleMessage(byte[] payload, String channel)
+    {
+        Set<SessionOutbox> outboxes = sessionService.getSessions(channel);
 
-        else if (channel.startsWith("floralink."))
+        if (outboxes.isEmpty())
         {
-            identifier = channel.replace("floralink.", "");
-            session = sessionService.getFloralinkSessionById(identifier);
+            log.trace("No local session for channel: {}", channel);
+            return;
         }
 
-        if (identifier == null || session == null)
+        TextMessage message = new TextMessage(payload);
+
+        for (SessionOutbox outbox : outboxes)
         {
-            log.debug("Message received from invalid channel: {}", channel);
-            return;
+            outbox.send(message);
         }
+    }
 
-        if (session.isOpen())
+    /**
+     * Queues a message for the local sessions of a channel.
+     *
+     * @param channel the channel name, e.g. {@code user.alice}
+     * @param payload the serialized message, shared by all recipients
+     */
+    public void deliver(String channel, byte[] payload)
+    {
+        if (!dispatcher.submit(channel.hashCode(), new Delivery(channel, payload, System.nanoTime())))
         {
-            try {
-                session.sendMessage(new TextMessage(message));
-            } catch (IOException exception) {
-                log.debug("Sending message to user {} failed: {}", identifier, exception.getMessage());
-            }
+            log.debug("Dispatch lane of channel {} is full, dropping message", channel);
         }
     }
 
     @Override
     public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
-        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
-        String messageContent = new String(message.getBody(), StandardCharsets.UTF_8);
+        NodeEnvelope envelope;
+
+        try {
+            envelope = NodeEnvelope.parse(message.getBody());
+        } catch (IllegalArgumentException exception) {
+            log.warn("Discarding malformed message on {}: {}", new String(message.getChannel(), StandardCharsets.UTF_8), exception.getMessage());
+            return;
+        }
 
-        handleMessage(messageContent, channel);
+        deliver(envelope.channel(), envelope.payload());
     }
 }
@@ -0,0 +1,141 @@
+package pl.Dayfit.Florae.Handlers.Decoders;
+
+import lombok.Getter;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reusable holder for a single decoded FloraLink frame.
+ * <p>
+ * One instance is kept per WebSocket session and overwritten by every incoming frame,
+ * so readings are stored in a flat array indexed by {@link SensorDataType#ordinal()}
+ * instead of a freshly allocated list of DTOs. A frame must not be shared between threads.
+ */
+public class SensorFrame {
+    public static final SensorDataType[] TYPES = SensorDataType.values();
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofSeconds(30);
+    private static final Duration MAX_SAMPLE_AGE = Duration.ofMinutes(10);
+
+    private final double[] values = new double[TYPES.length];
+    private int presentMask;
+
+    /**
+     * Number of entries in the last frame that were skipped because of an unknown type or a missing value
+     */
+    private @Getter int skippedCount;
+
+    /**
+     * Server time at which the frame was received, taken once per frame
+     */
+    private @Getter Instant receivedAt;
+
+    private boolean hasDeviceTimestamp;
+    private long deviceTimestampMillis;
+
+    void reset(Instant receivedAt)
+    {
+        this.receivedAt = receivedAt;
+        this.presentMask = 0;
+        this.skippedCount = 0;
+        this.hasDeviceTimestamp = false;
+    }
+
+    void setDeviceTimestamp(long epochMillis)
+    {
+        this.deviceTimestampMillis = epochMillis;
+        this.hasDeviceTimestamp = true;
+    }
+
+    /**
+     * Returns the time at which the readings were sampled. The device timestamp is used when the
+     * frame carried one, it is not ahead of the server clock by more than {@link #MAX_CLOCK_SKEW} and
+     * not older than {@link #MAX_SAMPLE_AGE}, which catches devices without a synchronized clock;
+     * otherwise the receive time is used.
+     * @return the effective sample time of this frame
+     */
+    public Instant getSampledAt()
+    {
+        long receivedAtMillis = receivedAt.toEpochMilli();
+
+        if (!hasDeviceTimestamp
+                || deviceTimestampMillis > receivedAtMillis + MAX_CLOCK_SKEW.toMillis()
+                || deviceTimestampMillis < receivedAtMillis - MAX_SAMPLE_AGE.toMillis())
+        {
+            return receivedAt;
+        }
+
+        return Instant.ofEpochMilli(deviceTimestampMillis);
+    }
+
+    void put(SensorDataType type, double value)
+    {
+        values[type.ordinal()] = value;
+        presentMask |= 1 << type.ordinal();
+    }
+
+    void skip()
+    {
+        skippedCount++;
+    }
+
+    public boolean has(SensorDataType type)
+    {
+        return (presentMask & (1 << type.ordinal())) != 0;
+    }
+
+    public double get(SensorDataType type)
+    {
+        return values[type.ordinal()];
+    }
+
+    public boolean isEmpty()
+    {
+        return presentMask == 0;
+    }
+
+    public int size()
+    {
+        return Integer.bitCount(presentMask);
+    }
+
+    /**
+     * Copies the readings into a new array indexed by {@link SensorDataType#ordinal()}, for consumers
+     * that outlive the frame.
+     * @return the readings, with {@link Double#NaN} for every sensor type missing from the frame
+     */
+    public double[] copyValues()
+    {
+        double[] result = new double[TYPES.length];
+
+        for (int index = 0; index < TYPES.length; index++)
+        {
+            result[index] = (presentMask & (1 << index)) != 0 ? values[index] : Double.NaN;
+        }
+
+        return result;
+    }
+
+    /**
+     * Copies the present readings into DTOs, for consumers that outlive the frame.
+     * @return a new list with one entry per present sensor type
+     */
+    public List<CurrentSensorDataDTO> toDataList()
+    {
+        List<CurrentSensorDataDTO> result = new ArrayList<>(size());
+
+        for (SensorDataType type : TYPES)
+        {
+            if (has(type))
+            {
+                result.add(new CurrentSensorDataDTO(type.toString(), values[type.ordinal()]));
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,206 @@
+package pl.Dayfit.Florae.Handlers.Decoders;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.time.Instant;
+
+/**
+ * Decodes FloraLink sensor frames directly into a reusable {@link SensorFrame}.
+ * <p>
+ * The JSON frame is an array of {@code {"type": "...", "value": ...}} objects. It is read
+ * token by token with Jackson's streaming API, so no intermediate DTO list is built. Type
+ * labels are matched against the raw parser buffer, and unknown labels are counted as
+ * skipped instead of raising an exception. Values may be sent as numbers or as quoted
+ * strings (older firmware).
+ * <p>
+ * Devices that negotiate the {@value #BINARY_PROTOCOL} subprotocol send compact binary
+ * frames instead (all multi-byte fields little-endian):
+ * <pre>
+ * u8  version            currently {@value #BINARY_VERSION}
+ * u8  flags              bit 0: device timestamp present
+ * i64 timestamp          epoch milliseconds, only when flag bit 0 is set
+ * u8  count              number of readings that follow
+ * count x { u8 sensor id (see {@link SensorDataType#getId()}), f32 value }
+ * </pre>
+ */
+@Component
+public class SensorFrameDecoder {
+    public static final String BINARY_PROTOCOL = "floralink.bin.v1";
+    public static final String JSON_PROTOCOL = "floralink.json.v1";
+
+    static final int BINARY_VERSION = 1;
+    static final int FLAG_DEVICE_TIMESTAMP = 0x01;
+    private static final int READING_SIZE = Byte.BYTES + Float.BYTES;
+
+    private static final char[][] LABELS = new char[SensorFrame.TYPES.length][];
+
+    static {
+        for (SensorDataType type : SensorFrame.TYPES)
+        {
+            LABELS[type.ordinal()] = type.toString().toCharArray();
+        }
+    }
+
+    private final JsonFactory jsonFactory;
+
+    public SensorFrameDecoder(ObjectMapper mapper)
+    {
+        this.jsonFactory = mapper.getFactory();
+    }
+
+    /**
+     * Decodes a JSON frame into the given frame, discarding its previous content.
+     *
+     * @param payload the raw text payload received from the device
+     * @param frame the per-session frame to fill
+     * @param receivedAt the server time at which the frame was received
+     * @throws IOException if the payload is not a well-formed JSON array of readings
+     */
+    public void decode(String payload, SensorFrame frame, Instant receivedAt) throws IOException
+    {
+        frame.reset(receivedAt);
+
+        try (JsonParser parser = jsonFactory.createParser(payload))
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new JsonParseException(parser, "Sensor frame must be a JSON array");
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY)
+            {
+                if (token != JsonToken.START_OBJECT)
+                {
+                    throw new JsonParseException(parser, "Sensor frame entries must be JSON objects");
+                }
+
+                readEntry(parser, frame);
+            }
+        }
+    }
+
+    /**
+     * Decodes a binary frame into the given frame, discarding its previous content.
+     *
+     * @param payload the binary payload received from the device
+     * @param frame the per-session frame to fill
+     * @param receivedAt the server time at which the frame was received
+     * @throws ProtocolException if the payload is truncated or has an unsupported version
+     */
+    public void decode(ByteBuffer payload, SensorFrame frame, Instant receivedAt) throws ProtocolException
+    {
+        frame.reset(receivedAt);
+        ByteBuffer buffer = payload.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < 2)
+        {
+            throw new ProtocolException("Binary sensor frame is too short");
+        }
+
+        int version = Byte.toUnsignedInt(buffer.get());
+
+        if (version != BINARY_VERSION)
+        {
+            throw new ProtocolException("Unsupported binary sensor frame version: " + version);
+        }
+
+        int flags = Byte.toUnsignedInt(buffer.get());
+
+        if ((flags & FLAG_DEVICE_TIMESTAMP) != 0)
+        {
+            if (buffer.remaining() < Long.BYTES)
+            {
+                throw new ProtocolException("Binary sensor frame is missing its timestamp");
+            }
+
+            frame.setDeviceTimestamp(buffer.getLong());
+        }
+
+        if (!buffer.hasRemaining())
+        {
+            throw new ProtocolException("Binary sensor frame is missing its reading count");
+        }
+
+        int count = Byte.toUnsignedInt(buffer.get());
+
+        if (buffer.remaining() < count * READING_SIZE)
+        {
+            throw new ProtocolException("Binary sensor frame declares " + count + " readings but is truncated");
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            SensorDataType type = SensorDataType.fromId(Byte.toUnsignedInt(buffer.get()));
+            float value = buffer.getFloat();
+
+            if (type == null || Float.isNaN(value))
+            {
+                frame.skip();
+                continue;
+            }
+
+            frame.put(type, value);
+        }
+    }
+
+    private void readEntry(JsonParser parser, SensorFrame frame) throws IOException
+    {
+        SensorDataType type = null;
+        double value = Double.NaN;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+
+            switch (fieldName)
+            {
+                case "type" -> type = valueToken == JsonToken.VALUE_STRING ? matchLabel(parser) : null;
+                case "value" -> value = valueToken.isScalarValue() && valueToken != JsonToken.VALUE_NULL ? parser.getValueAsDouble(Double.NaN) : Double.NaN;
+                default -> { }
+            }
+
+            // an object or array value is skipped as a whole, its fields must not be read as fields of the entry
+            parser.skipChildren();
+        }
+
+        if (type == null || Double.isNaN(value))
+        {
+            frame.skip();
+            return;
+        }
+
+        frame.put(type, value);
+    }
+
+    private static SensorDataType matchLabel(JsonParser parser) throws IOException
+    {
+        char[] buffer = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+
+        for (SensorDataType type : SensorFrame.TYPES)
+        {
+            char[] label = LABELS[type.ordinal()];
+
+            if (label.length == length && Arrays.equals(label, 0, length, buffer, offset, offset + length))
+            {
+                return type;
+            }
+        }
+
+        return null;
+    }
+}
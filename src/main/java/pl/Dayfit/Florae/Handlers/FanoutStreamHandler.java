@@ -12,17 +12,20 @@ import org.springframework.web.socket.WebSocketSession;
 import pl.Dayfit.Florae.Enums.ConnectionType;
 import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
 import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Services.WebSockets.DashboardSnapshotService;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class FanoutStreamHandler implements WebSocketHandler {
     private final ApplicationEventPublisher eventPublisher;
+    private final DashboardSnapshotService dashboardSnapshotService;
 
     @Override
     public void afterConnectionEstablished(@NonNull WebSocketSession session) {
         log.trace("New connection established at {}, publishing event...", session.getLocalAddress());
         eventPublisher.publishEvent(new WebSocketConnectionEstablishedEvent(session, ConnectionType.USER));
+        dashboardSnapshotService.sendSnapshot(session);
     }
 
     @Override
@@ -1,169 +1,120 @@
 package pl.Dayfit.Florae.Handlers;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.NonNull;
-import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
-import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
-import pl.Dayfit.Florae.Entities.Plant;
-import pl.Dayfit.Florae.Entities.Redis.DailyReport;
 import pl.Dayfit.Florae.Enums.ConnectionType;
-import pl.Dayfit.Florae.Enums.SensorDataType;
 import pl.Dayfit.Florae.Events.CurrentDataUploadedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
 import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
-import pl.Dayfit.Florae.Repositories.Redis.DailyReportRepository;
-import pl.Dayfit.Florae.Services.PlantCacheService;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrame;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrameDecoder;
+import pl.Dayfit.Florae.POJOs.DeviceContext;
+import pl.Dayfit.Florae.Services.Telemetry.CurrentDataEventBus;
+import pl.Dayfit.Florae.Services.Telemetry.DailyReportBufferService;
+import pl.Dayfit.Florae.Services.Telemetry.RecentTelemetryStore;
+import pl.Dayfit.Florae.Services.Telemetry.SensorHistoryWriter;
+import pl.Dayfit.Florae.Services.WebSockets.DeviceCommandService;
+import pl.Dayfit.Florae.Services.WebSockets.DeviceContextRegistry;
+import pl.Dayfit.Florae.Services.WebSockets.IngestDispatcher;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class FloraLinkStreamHandler implements WebSocketHandler {
-    private final ObjectMapper mapper;
+    private static final String FRAME_ATTRIBUTE = "frame";
+
+    private final SensorFrameDecoder frameDecoder;
     private final ApplicationEventPublisher eventPublisher;
-    private final PlantCacheService plantCacheService;
-    private final DailyReportRepository dailyReportRepository;
+    private final DeviceContextRegistry deviceContextRegistry;
+    private final IngestDispatcher ingestDispatcher;
+    private final DailyReportBufferService dailyReportBufferService;
+    private final SensorHistoryWriter sensorHistoryWriter;
+    private final RecentTelemetryStore recentTelemetryStore;
+    private final CurrentDataEventBus currentDataEventBus;
+    private final DeviceCommandService deviceCommandService;
     private @Getter AtomicInteger activeFloraLinks = new AtomicInteger(0);
 
     @Override
     public void afterConnectionEstablished(@NonNull WebSocketSession session) {
         activeFloraLinks.incrementAndGet();
+        deviceContextRegistry.register((DeviceContextRegistry.Holder) session.getAttributes().get(DeviceContextRegistry.CONTEXT_ATTRIBUTE));
         eventPublisher.publishEvent(new WebSocketConnectionEstablishedEvent(session, ConnectionType.FLORALINK));
         log.trace("New connection established at {}", session.getLocalAddress());
     }
 
     @Override
-    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws JsonProcessingException {
+    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) {
         log.trace("Received message at {}: {}", session.getLocalAddress(), message.getPayload());
+        ingestDispatcher.dispatch(session, message, this::processMessage);
+    }
 
-        if (!(message instanceof TextMessage textMessage))
+    /**
+     * Decodes and ingests a frame, or handles a command acknowledgement (a JSON object instead of an array).
+     * Runs on the ingest mailbox of the session, one frame at a time.
+     */
+    private void processMessage(WebSocketSession session, WebSocketMessage<?> message) throws IOException {
+        SensorFrame frame = (SensorFrame) session.getAttributes().computeIfAbsent(FRAME_ATTRIBUTE, key -> new SensorFrame());
+
+        if (message instanceof TextMessage textMessage && textMessage.getPayload().startsWith("{"))
         {
-            log.debug("Received non-text message at {}. Message discarded.", session.getLocalAddress());
+            deviceCommandService.acknowledge((Integer) session.getAttributes().get("id"), textMessage.getPayload());
             return;
         }
 
-        List<CurrentSensorDataDTO> sensorData = mapper.readValue(textMessage.getPayload(), new TypeReference<>() {});
-        Authentication auth = (Authentication) session.getPrincipal();
-        Plant plant = plantCacheService.getPlantById((Integer) session.getAttributes().get("id"));
-
-        List<CurrentSensorDataDTO> filteredSensorData = sensorData.stream().filter(dto ->
+        if (message instanceof TextMessage textMessage)
         {
-            try {
-                SensorDataType.valueOf(dto.getType());
-                return true;
-            } catch (IllegalArgumentException e) {
-                return false;
-            }
-        }).toList();
+            frameDecoder.decode(textMessage.getPayload(), frame, Instant.now());
+        }
 
-        if (auth == null)
+        else if (message instanceof BinaryMessage binaryMessage && SensorFrameDecoder.BINARY_PROTOCOL.equals(session.getAcceptedProtocol()))
         {
-            log.warn("No authentication found for session {} at IP {}. Message discarded.", session.getId(), session.getLocalAddress());
-            return;
+            frameDecoder.decode(binaryMessage.getPayload(), frame, Instant.now());
         }
 
-        if (plant == null) {
-            log.warn("No plant found for session {} at IP {}. Message discarded.", session.getId(), session.getLocalAddress());
+        else
+        {
+            log.debug("Received unsupported message at {}. Message discarded.", session.getLocalAddress());
             return;
         }
 
-        DailyReport report = dailyReportRepository.findDailyReportById(plant.getId().toString());
+        DeviceContextRegistry.Holder holder = (DeviceContextRegistry.Holder) session.getAttributes().get(DeviceContextRegistry.CONTEXT_ATTRIBUTE);
 
-        if (report == null)
+        if (holder == null)
         {
-            report = new DailyReport();
-            report.setDailyReadings(new ConcurrentHashMap<>());
-            report.setFloraLinkId(plant.getLinkedApiKey().getLinkedFloraLink().getId());
-            report.setId(plant.getId().toString());
-            report.setOwner(auth.getName());
+            log.warn("No device context found for session {} at IP {}. Message discarded.", session.getId(), session.getLocalAddress());
+            return;
         }
 
-        Map<SensorDataType, DailyReport.DailyReadings> readings = report.getDailyReadings();
-
-        if (readings == null)
+        if (holder.isRevoked())
         {
-            readings = new ConcurrentHashMap<>();
+            log.debug("API key of session {} was revoked, closing connection", session.getId());
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
         }
 
-        if (filteredSensorData.size() != sensorData.size())
+        holder.markFrame(System.currentTimeMillis());
+
+        if (frame.getSkippedCount() > 0)
         {
             log.debug("Message have unknown sensor data at {}. Sending partial data.", session.getLocalAddress());
         }
 
-        final Map<SensorDataType, DailyReport.DailyReadings> finalReadings = readings;
-        filteredSensorData.forEach(dto ->
-        {
-            SensorDataType type = SensorDataType.valueOf(dto.getType());
-            DailyReport.DailyReadings reading = finalReadings.get(type);
-
-            if (reading == null)
-            {
-             reading = new DailyReport.DailyReadings();
-
-             reading.setType(type);
-             reading.setMaxTimestamp(Instant.now());
-             reading.setMinTimestamp(Instant.now());
-             reading.setAvgInitialTimestamp(Instant.now());
-             reading.setAvgValue(dto.getValue());
-             reading.setCount(1);
-             reading.setMinValue(dto.getValue());
-             reading.setMaxValue(dto.getValue());
-
-             finalReadings.put(type, reading);
-             return;
-            }
-
-            if (Duration.between(reading.getAvgInitialTimestamp(), Instant.now()).toHours() >= 24)
-            {
-                reading.setAvgInitialTimestamp(Instant.now());
-                reading.setAvgValue(dto.getValue());
-                reading.setCount(1);
-            }
-
-            if (reading.getMaxValue() == null || reading.getMaxValue() < dto.getValue() || Duration.between(reading.getMaxTimestamp(), Instant.now()).toDays() >= 24)
-            {
-                reading.setMaxValue(dto.getValue());
-                reading.setMaxTimestamp(Instant.now());
-            }
-
-            if (reading.getMinValue() == null || reading.getMinValue() > dto.getValue() || Duration.between(reading.getMinTimestamp(), Instant.now()).toDays() >= 24)
-            {
-                reading.setMinValue(dto.getValue());
-                reading.setMinTimestamp(Instant.now());
-            }
-
-            Integer count = reading.getCount();
-
-            if (count == 0)
-            {
-                log.warn("Count number in 24h report was 0, resetting to 1 to avoid division by zero. Session: {}", session.getLocalAddress());
-                count = 1;
-            }
-
-            reading.setAvgValue((reading.getAvgValue() * count + dto.getValue()) / (count + 1));
+        DeviceContext context = holder.getContext();
 
-            finalReadings.put(type, reading);
-        });
-
-        report.setDailyReadings(finalReadings);
-
-        dailyReportRepository.save(report);
-        eventPublisher.publishEvent(new CurrentDataUploadedEvent(filteredSensorData, auth, plant));
+        dailyReportBufferService.accept(context.plantId(), context.floraLinkId(), context.owner(), frame);
+        sensorHistoryWriter.record(context.plantId(), context.floraLinkId(), frame);
+        recentTelemetryStore.record(context.plantId(), frame);
+        currentDataEventBus.publish(new CurrentDataUploadedEvent(frame.copyValues(), context));
     }
 
     @Override
@@ -189,7 +140,9 @@ public class FloraLinkStreamHandler implements WebSocketHandler {
     @Override
     public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) {
         activeFloraLinks.decrementAndGet();
-        eventPublisher.publishEvent(new WebSocketConnectionEstablishedEvent(session, ConnectionType.FLORALINK));
+        ingestDispatcher.close(session);
+        deviceContextRegistry.unregister((DeviceContextRegistry.Holder) session.getAttributes().get(DeviceContextRegistry.CONTEXT_ATTRIBUTE));
+        eventPublisher.publishEvent(new WebSocketConnectionClosedEvent(session, ConnectionType.FLORALINK));
         log.trace("Connection closed at {}. Reason: {}", session.getLocalAddress(), closeStatus.getReason());
     }
 
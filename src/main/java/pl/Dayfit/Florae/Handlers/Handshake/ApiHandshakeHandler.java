@@ -6,12 +6,38 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrameDecoder;
 
 import java.security.Principal;
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class ApiHandshakeHandler extends DefaultHandshakeHandler {
+    public ApiHandshakeHandler()
+    {
+        //Devices that request no subprotocol keep using plain JSON frames
+        setSupportedProtocols(SensorFrameDecoder.BINARY_PROTOCOL, SensorFrameDecoder.JSON_PROTOCOL);
+    }
+
+    /**
+     * Selects the binary protocol whenever the device offers it, whatever its position in the
+     * requested list; otherwise the first supported protocol the device requested.
+     */
+    @Override
+    protected String selectProtocol(@NonNull List<String> requestedProtocols, @NonNull WebSocketHandler webSocketHandler)
+    {
+        for (String protocol : requestedProtocols)
+        {
+            if (SensorFrameDecoder.BINARY_PROTOCOL.equalsIgnoreCase(protocol))
+            {
+                return protocol;
+            }
+        }
+
+        return super.selectProtocol(requestedProtocols, webSocketHandler);
+    }
+
     @Override
     protected Principal determineUser(@NonNull ServerHttpRequest request, @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
         return (Authentication) attributes.get("auth");
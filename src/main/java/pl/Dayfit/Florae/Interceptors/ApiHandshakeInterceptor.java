@@ -15,7 +15,11 @@ import org.springframework.web.socket.server.HandshakeInterceptor;
 
 import pl.Dayfit.Florae.Auth.ApiKeyAuthenticationToken;
 import pl.Dayfit.Florae.Entities.ApiKey;
+import pl.Dayfit.Florae.Entities.Plant;
+import pl.Dayfit.Florae.POJOs.DeviceContext;
 import pl.Dayfit.Florae.Services.Auth.API.ApiKeyCacheService;
+import pl.Dayfit.Florae.Services.PlantCacheService;
+import pl.Dayfit.Florae.Services.WebSockets.DeviceContextRegistry;
 
 import java.io.IOException;
 import java.util.Map;
@@ -25,6 +29,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ApiHandshakeInterceptor implements HandshakeInterceptor {
     private final ApiKeyCacheService apiKeyCacheService;
+    private final PlantCacheService plantCacheService;
 
     @Override
     public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response, @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
@@ -55,9 +60,18 @@ public class ApiHandshakeInterceptor implements HandshakeInterceptor {
             return false;
         }
 
+        Plant plant = apiKey.getLinkedPlant() == null ? null : plantCacheService.getPlantById(apiKey.getLinkedPlant().getId());
+
+        if (plant == null)
+        {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
         attributes.put("auth", new ApiKeyAuthenticationToken(apiKey));
         attributes.put("owner", apiKey.getFloraeUser().getUsername());
         attributes.put("id", apiKey.getLinkedFloraLink().getId());
+        attributes.put(DeviceContextRegistry.CONTEXT_ATTRIBUTE, new DeviceContextRegistry.Holder(DeviceContext.of(plant, apiKey.getLinkedFloraLink().getId())));
 
         return true;
     }
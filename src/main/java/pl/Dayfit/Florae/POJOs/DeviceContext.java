@@ -0,0 +1,53 @@
+package pl.Dayfit.Florae.POJOs;
+
+import pl.Dayfit.Florae.Entities.Plant;
+
+import java.util.Objects;
+
+/**
+ * Everything the ingest path needs to know about a connected FloraLink, resolved once at handshake.
+ *
+ * @param plantId the plant the FloraLink is linked to
+ * @param floraLinkId the FloraLink identifier
+ * @param owner the username of the plant owner
+ * @param potVolume the pot volume in liters, or {@code null} if it was not set
+ * @param requirements the plant requirements at the time the context was resolved
+ * @param rules the requirements and pot volume compiled into thresholds
+ */
+public record DeviceContext(int plantId, int floraLinkId, String owner, Double potVolume, PlantRequirementsSnapshot requirements, PlantRules rules) {
+    public static DeviceContext of(Plant plant, int floraLinkId)
+    {
+        PlantRequirementsSnapshot requirements = PlantRequirementsSnapshot.of(plant.getRequirements());
+
+        return new DeviceContext(
+                plant.getId(),
+                floraLinkId,
+                plant.getLinkedUser().getUsername(),
+                plant.getPotVolume(),
+                requirements,
+                PlantRules.compile(requirements, plant.getPotVolume())
+        );
+    }
+
+    /**
+     * Resolves the context again from an updated plant, keeping the compiled rules unless the
+     * requirements or the pot volume changed.
+     *
+     * @param plant the updated plant
+     * @return the refreshed context
+     */
+    public DeviceContext refresh(Plant plant)
+    {
+        PlantRequirementsSnapshot updatedRequirements = PlantRequirementsSnapshot.of(plant.getRequirements());
+        boolean unchanged = updatedRequirements.equals(requirements) && Objects.equals(plant.getPotVolume(), potVolume);
+
+        return new DeviceContext(
+                plant.getId(),
+                floraLinkId,
+                plant.getLinkedUser().getUsername(),
+                plant.getPotVolume(),
+                updatedRequirements,
+                unchanged ? rules : PlantRules.compile(updatedRequirements, plant.getPotVolume())
+        );
+    }
+}
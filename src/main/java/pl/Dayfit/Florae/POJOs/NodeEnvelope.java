@@ -0,0 +1,53 @@
+package pl.Dayfit.Florae.POJOs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fanout message addressed to one node, published on its {@code node.{id}} channel.
+ * <p>
+ * Encoded as {@code [u16 channel length][channel, UTF-8][payload]}, so the already serialized payload
+ * is carried as is.
+ *
+ * @param channel the logical channel of the recipients, e.g. {@code user.alice}
+ * @param payload the serialized message
+ */
+public record NodeEnvelope(String channel, byte[] payload) {
+    public byte[] toByteArray()
+    {
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(Short.BYTES + channelBytes.length + payload.length)
+                .putShort((short) channelBytes.length)
+                .put(channelBytes)
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * @param bytes an encoded envelope
+     * @return the decoded envelope
+     * @throws IllegalArgumentException if the envelope is truncated
+     */
+    public static NodeEnvelope parse(byte[] bytes)
+    {
+        if (bytes.length < Short.BYTES)
+        {
+            throw new IllegalArgumentException("Node envelope is too short");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int channelLength = Short.toUnsignedInt(buffer.getShort());
+
+        if (buffer.remaining() < channelLength)
+        {
+            throw new IllegalArgumentException("Node envelope channel is truncated");
+        }
+
+        String channel = new String(bytes, Short.BYTES, channelLength, StandardCharsets.UTF_8);
+        byte[] payload = new byte[buffer.remaining() - channelLength];
+        System.arraycopy(bytes, Short.BYTES + channelLength, payload, 0, payload.length);
+
+        return new NodeEnvelope(channel, payload);
+    }
+}
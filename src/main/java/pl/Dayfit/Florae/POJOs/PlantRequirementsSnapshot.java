@@ -0,0 +1,32 @@
+package pl.Dayfit.Florae.POJOs;
+
+import pl.Dayfit.Florae.Entities.PlantRequirements;
+
+/**
+ * Immutable copy of a plant's {@link PlantRequirements}. Missing bounds are stored as {@link Double#NaN},
+ * so comparisons against them are always false.
+ */
+public record PlantRequirementsSnapshot(double minLightLux, double maxLightLux,
+                                        double minTemp, double maxTemp,
+                                        double minEnvHumid, double maxEnvHumid,
+                                        double minSoilMoist, double maxSoilMoist) {
+    public static PlantRequirementsSnapshot of(PlantRequirements requirements)
+    {
+        if (requirements == null)
+        {
+            return new PlantRequirementsSnapshot(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        return new PlantRequirementsSnapshot(
+                orNaN(requirements.getMinLightLux()), orNaN(requirements.getMaxLightLux()),
+                orNaN(requirements.getMinTemp()), orNaN(requirements.getMaxTemp()),
+                orNaN(requirements.getMinEnvHumid()), orNaN(requirements.getMaxEnvHumid()),
+                orNaN(requirements.getMinSoilMoist()), orNaN(requirements.getMaxSoilMoist())
+        );
+    }
+
+    private static double orNaN(Double value)
+    {
+        return value == null ? Double.NaN : value;
+    }
+}
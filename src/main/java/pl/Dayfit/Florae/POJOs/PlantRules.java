@@ -0,0 +1,153 @@
+package pl.Dayfit.Florae.POJOs;
+
+import pl.Dayfit.Florae.Enums.SensorAlertType;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+/**
+ * A plant's requirements compiled into a flat threshold table indexed by {@link SensorDataType#ordinal()}.
+ * <p>
+ * A reading below the minimum (above the maximum) raises an alert that is only cleared once the
+ * reading is back above the minimum (below the maximum) by {@link #HYSTERESIS} of the allowed range,
+ * so a value jittering around a bound does not flap. While the soil moisture alert is raised every
+ * reading requests watering up to the middle of the allowed range. Missing bounds are {@link Double#NaN}
+ * and never trigger. Evaluation allocates nothing; the alert state of a device lives in a {@link State}.
+ */
+public final class PlantRules {
+    /**
+     * Width of the hysteresis band as a fraction of the allowed range, or of the bound if only one is set
+     */
+    public static final double HYSTERESIS = 0.05;
+
+    private static final SensorDataType[] TYPES = SensorDataType.values();
+    private static final int SOIL_MOISTURE = SensorDataType.SOIL_MOISTURE.ordinal();
+
+    private final double[] min = new double[TYPES.length];
+    private final double[] max = new double[TYPES.length];
+    private final double[] belowClear = new double[TYPES.length];
+    private final double[] aboveClear = new double[TYPES.length];
+    private final double waterPerPercent;
+    private final double targetSoilMoisture;
+
+    /**
+     * Receives the actions triggered by a frame.
+     */
+    public interface ActionSink
+    {
+        /**
+         * @param context the device that sent the frame
+         * @param milliliters the water to add to reach the target soil moisture
+         */
+        void water(DeviceContext context, double milliliters);
+
+        /**
+         * @param context the device that sent the frame
+         * @param type the sensor type
+         * @param alert the raised or cleared alert
+         * @param value the reading that caused the change
+         */
+        void alert(DeviceContext context, SensorDataType type, SensorAlertType alert, double value);
+    }
+
+    /**
+     * Raised alerts of one device, as bit masks by sensor type ordinal.
+     */
+    public static final class State
+    {
+        private int below;
+        private int above;
+    }
+
+    private PlantRules(PlantRequirementsSnapshot requirements, Double potVolume)
+    {
+        put(SensorDataType.LIGHT_LUX, requirements.minLightLux(), requirements.maxLightLux());
+        put(SensorDataType.ENV_TEMPERATURE, requirements.minTemp(), requirements.maxTemp());
+        put(SensorDataType.ENV_HUMIDITY, requirements.minEnvHumid(), requirements.maxEnvHumid());
+        put(SensorDataType.SOIL_MOISTURE, requirements.minSoilMoist(), requirements.maxSoilMoist());
+
+        double maxSoilMoisture = max[SOIL_MOISTURE];
+        targetSoilMoisture = Double.isNaN(maxSoilMoisture) ? belowClear[SOIL_MOISTURE] : (min[SOIL_MOISTURE] + maxSoilMoisture) / 2;
+
+        // (neededHumidity / 100.0) * capacity * 1000.0 = capacity * 10 * neededHumidity
+        waterPerPercent = potVolume == null ? Double.NaN : potVolume * 10;
+    }
+
+    public static PlantRules compile(PlantRequirementsSnapshot requirements, Double potVolume)
+    {
+        return new PlantRules(requirements, potVolume);
+    }
+
+    /**
+     * Checks the readings of a frame against the thresholds and passes triggered actions to the sink.
+     *
+     * @param context the device that sent the frame
+     * @param values the readings of the frame indexed by {@link SensorDataType#ordinal()}, {@link Double#NaN} if missing
+     * @param state the alert state of the device, updated in place
+     * @param sink receives the triggered actions
+     */
+    public void evaluate(DeviceContext context, double[] values, State state, ActionSink sink)
+    {
+        for (int index = 0; index < values.length; index++)
+        {
+            double value = values[index];
+
+            if (Double.isNaN(value))
+            {
+                continue;
+            }
+
+            SensorDataType type = TYPES[index];
+            int bit = 1 << index;
+
+            if ((state.below & bit) != 0)
+            {
+                if (value >= belowClear[index])
+                {
+                    state.below &= ~bit;
+                    sink.alert(context, type, SensorAlertType.BACK_IN_RANGE, value);
+                }
+            }
+            else if (value < min[index])
+            {
+                state.below |= bit;
+                sink.alert(context, type, SensorAlertType.BELOW_MIN, value);
+            }
+
+            if ((state.above & bit) != 0)
+            {
+                if (value <= aboveClear[index])
+                {
+                    state.above &= ~bit;
+                    sink.alert(context, type, SensorAlertType.BACK_IN_RANGE, value);
+                }
+            }
+            else if (value > max[index])
+            {
+                state.above |= bit;
+                sink.alert(context, type, SensorAlertType.ABOVE_MAX, value);
+            }
+
+            if (index == SOIL_MOISTURE && (state.below & bit) != 0)
+            {
+                double milliliters = waterPerPercent * (targetSoilMoisture - value);
+
+                if (milliliters > 0)
+                {
+                    sink.water(context, milliliters);
+                }
+            }
+        }
+    }
+
+    private void put(SensorDataType type, double lower, double upper)
+    {
+        int index = type.ordinal();
+        double band = Double.isNaN(lower) || Double.isNaN(upper)
+                ? HYSTERESIS * Math.abs(Double.isNaN(lower) ? upper : lower)
+                : HYSTERESIS * (upper - lower);
+
+        min[index] = lower;
+        max[index] = upper;
+        belowClear[index] = lower + band;
+        aboveClear[index] = upper - band;
+    }
+}
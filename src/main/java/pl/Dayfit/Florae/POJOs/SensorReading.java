@@ -0,0 +1,15 @@
+package pl.Dayfit.Florae.POJOs;
+
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+/**
+ * A single raw sensor reading as persisted in the telemetry history.
+ *
+ * @param plantId the plant the FloraLink is linked to
+ * @param floraLinkId the FloraLink that sampled the value
+ * @param type the sensor type
+ * @param value the sampled value
+ * @param timestamp the sample time in epoch milliseconds
+ */
+public record SensorReading(int plantId, int floraLinkId, SensorDataType type, double value, long timestamp) {
+}
@@ -0,0 +1,44 @@
+package pl.Dayfit.Florae.POJOs;
+
+import lombok.Getter;
+import pl.Dayfit.Florae.Enums.RollupResolution;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+/**
+ * Aggregate of one sensor of one plant within a single rollup bucket.
+ * Instances are built incrementally from {@link SensorReading}s and merged into the stored rollup.
+ */
+@Getter
+public class SensorRollup {
+    public record Key(RollupResolution resolution, int plantId, SensorDataType type, long bucketStart) {
+    }
+
+    private final Key key;
+
+    private double minValue = Double.POSITIVE_INFINITY;
+    private double maxValue = Double.NEGATIVE_INFINITY;
+    private double sum;
+    private long count;
+
+    private double lastValue;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public SensorRollup(Key key)
+    {
+        this.key = key;
+    }
+
+    public void add(double value, long timestamp)
+    {
+        minValue = Math.min(minValue, value);
+        maxValue = Math.max(maxValue, value);
+        sum += value;
+        count++;
+
+        if (timestamp >= lastTimestamp)
+        {
+            lastValue = value;
+            lastTimestamp = timestamp;
+        }
+    }
+}
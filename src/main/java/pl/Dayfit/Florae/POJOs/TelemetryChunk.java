@@ -0,0 +1,14 @@
+package pl.Dayfit.Florae.POJOs;
+
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+/**
+ * A sealed, compressed chunk of recent readings of one sensor of a plant.
+ *
+ * @param plantId the plant the readings belong to
+ * @param type the sensor type
+ * @param firstTimestamp the timestamp of the first point in epoch milliseconds
+ * @param data the chunk encoded by {@link pl.Dayfit.Florae.Utils.GorillaChunk}
+ */
+public record TelemetryChunk(int plantId, SensorDataType type, long firstTimestamp, byte[] data) {
+}
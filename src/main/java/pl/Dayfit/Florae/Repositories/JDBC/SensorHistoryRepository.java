@@ -0,0 +1,153 @@
+package pl.Dayfit.Florae.Repositories.JDBC;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import pl.Dayfit.Florae.POJOs.SensorReading;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * JDBC access to the raw sensor history.
+ * <p>
+ * Readings are stored in {@code sensor_reading}, a table range-partitioned by month on
+ * {@code recorded_at}. Partitions are named {@code sensor_reading_yYYYYmMM}, so retention is a
+ * matter of dropping whole partitions. Inserts use multi-row {@code INSERT} statements of up to
+ * {@link #ROWS_PER_STATEMENT} rows. The schema is PostgreSQL specific and is not managed by Hibernate.
+ * <p>
+ * {@code ingest_checkpoint} holds the position of the last ingest journal record applied per journal,
+ * written in the same transaction as the replayed readings.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorHistoryRepository {
+    public static final int ROWS_PER_STATEMENT = 500;
+
+    private static final String TABLE = "sensor_reading";
+    private static final String INSERT_PREFIX = "INSERT INTO " + TABLE + " (plant_id, floralink_id, sensor_type, value, recorded_at) VALUES ";
+    private static final String FULL_INSERT = buildInsert(ROWS_PER_STATEMENT);
+    private static final String CHECKPOINT_TABLE = "ingest_checkpoint";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void createSchema()
+    {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "plant_id INTEGER NOT NULL, " +
+                "floralink_id INTEGER NOT NULL, " +
+                "sensor_type SMALLINT NOT NULL, " +
+                "value DOUBLE PRECISION NOT NULL, " +
+                "recorded_at TIMESTAMPTZ NOT NULL" +
+                ") PARTITION BY RANGE (recorded_at)");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_plant_type_time_idx ON " + TABLE + " (plant_id, sensor_type, recorded_at)");
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE + " (" +
+                "journal_id VARCHAR(36) PRIMARY KEY, " +
+                "position BIGINT NOT NULL)");
+    }
+
+    /**
+     * @param journalId the ingest journal identifier
+     * @return the position of the last applied record, or {@code -1} if none was applied
+     */
+    public long findCheckpoint(String journalId)
+    {
+        List<Long> positions = jdbcTemplate.queryForList("SELECT position FROM " + CHECKPOINT_TABLE + " WHERE journal_id = ?", Long.class, journalId);
+        return positions.isEmpty() ? -1 : positions.getFirst();
+    }
+
+    public void saveCheckpoint(String journalId, long position)
+    {
+        jdbcTemplate.update("INSERT INTO " + CHECKPOINT_TABLE + " (journal_id, position) VALUES (?, ?) " +
+                "ON CONFLICT (journal_id) DO UPDATE SET position = GREATEST(" + CHECKPOINT_TABLE + ".position, EXCLUDED.position)", journalId, position);
+    }
+
+    public void createPartition(YearMonth month)
+    {
+        Instant from = month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant to = month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF " + TABLE +
+                " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+    }
+
+    /**
+     * Drops every monthly partition that ends before the given month.
+     * @param oldestRetained the oldest month to keep
+     * @return number of dropped partitions
+     */
+    public int dropPartitionsBefore(YearMonth oldestRetained)
+    {
+        String cutoff = partitionName(oldestRetained);
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?", String.class, TABLE);
+
+        int dropped = 0;
+
+        for (String partition : partitions)
+        {
+            if (partition.length() == cutoff.length() && partition.compareTo(cutoff) < 0)
+            {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                dropped++;
+            }
+        }
+
+        return dropped;
+    }
+
+    public void insertAll(List<SensorReading> readings)
+    {
+        int offset = 0;
+
+        while (offset < readings.size())
+        {
+            int rows = Math.min(ROWS_PER_STATEMENT, readings.size() - offset);
+            List<SensorReading> chunk = readings.subList(offset, offset + rows);
+            String sql = rows == ROWS_PER_STATEMENT ? FULL_INSERT : buildInsert(rows);
+
+            jdbcTemplate.update(connection ->
+            {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                int index = 1;
+
+                for (SensorReading reading : chunk)
+                {
+                    statement.setInt(index++, reading.plantId());
+                    statement.setInt(index++, reading.floraLinkId());
+                    statement.setShort(index++, (short) reading.type().getId());
+                    statement.setDouble(index++, reading.value());
+                    statement.setTimestamp(index++, new Timestamp(reading.timestamp()));
+                }
+
+                return statement;
+            });
+
+            offset += rows;
+        }
+    }
+
+    private static String partitionName(YearMonth month)
+    {
+        return String.format("%s_y%04dm%02d", TABLE, month.getYear(), month.getMonthValue());
+    }
+
+    private static String buildInsert(int rows)
+    {
+        StringBuilder builder = new StringBuilder(INSERT_PREFIX.length() + rows * 18).append(INSERT_PREFIX);
+
+        for (int i = 0; i < rows; i++)
+        {
+            builder.append(i == 0 ? "" : ",").append("(?,?,?,?,?)");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package pl.Dayfit.Florae.Repositories.JDBC;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import pl.Dayfit.Florae.DTOs.Sensors.SensorHistoryPointDTO;
+import pl.Dayfit.Florae.Enums.RollupResolution;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.POJOs.SensorRollup;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to the pre-aggregated sensor rollups stored in {@code sensor_rollup}.
+ * <p>
+ * Each row holds min, max, sum, count and the last value of one sensor of one plant within
+ * a bucket of a given {@link RollupResolution}. Rollups are merged into existing rows with a
+ * multi-row {@code INSERT ... ON CONFLICT DO UPDATE}, so buckets are updated incrementally
+ * instead of being recomputed from raw readings.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorRollupRepository {
+    private static final int ROWS_PER_STATEMENT = 500;
+    private static final String TABLE = "sensor_rollup";
+
+    private static final String INSERT_PREFIX = "INSERT INTO " + TABLE +
+            " (resolution, plant_id, sensor_type, bucket_start, min_value, max_value, sum_value, sample_count, last_value, last_at) VALUES ";
+
+    private static final String UPSERT_SUFFIX = " ON CONFLICT (resolution, plant_id, sensor_type, bucket_start) DO UPDATE SET " +
+            "min_value = LEAST(" + TABLE + ".min_value, EXCLUDED.min_value), " +
+            "max_value = GREATEST(" + TABLE + ".max_value, EXCLUDED.max_value), " +
+            "sum_value = " + TABLE + ".sum_value + EXCLUDED.sum_value, " +
+            "sample_count = " + TABLE + ".sample_count + EXCLUDED.sample_count, " +
+            "last_value = CASE WHEN EXCLUDED.last_at >= " + TABLE + ".last_at THEN EXCLUDED.last_value ELSE " + TABLE + ".last_value END, " +
+            "last_at = GREATEST(" + TABLE + ".last_at, EXCLUDED.last_at)";
+
+    private static final String FULL_UPSERT = buildUpsert(ROWS_PER_STATEMENT);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void createSchema()
+    {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "resolution SMALLINT NOT NULL, " +
+                "plant_id INTEGER NOT NULL, " +
+                "sensor_type SMALLINT NOT NULL, " +
+                "bucket_start TIMESTAMPTZ NOT NULL, " +
+                "min_value DOUBLE PRECISION NOT NULL, " +
+                "max_value DOUBLE PRECISION NOT NULL, " +
+                "sum_value DOUBLE PRECISION NOT NULL, " +
+                "sample_count BIGINT NOT NULL, " +
+                "last_value DOUBLE PRECISION NOT NULL, " +
+                "last_at TIMESTAMPTZ NOT NULL, " +
+                "PRIMARY KEY (resolution, plant_id, sensor_type, bucket_start))");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_resolution_bucket_idx ON " + TABLE + " (resolution, bucket_start)");
+    }
+
+    /**
+     * Merges rollups into the stored buckets. Callers pass each bucket at most once and in a
+     * stable order, so concurrent writers lock rows in the same sequence.
+     * @param rollups the rollups to merge
+     */
+    public void mergeAll(List<SensorRollup> rollups)
+    {
+        int offset = 0;
+
+        while (offset < rollups.size())
+        {
+            int rows = Math.min(ROWS_PER_STATEMENT, rollups.size() - offset);
+            List<SensorRollup> chunk = rollups.subList(offset, offset + rows);
+            String sql = rows == ROWS_PER_STATEMENT ? FULL_UPSERT : buildUpsert(rows);
+
+            jdbcTemplate.update(connection ->
+            {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                int index = 1;
+
+                for (SensorRollup rollup : chunk)
+                {
+                    SensorRollup.Key key = rollup.getKey();
+                    statement.setShort(index++, (short) key.resolution().getId());
+                    statement.setInt(index++, key.plantId());
+                    statement.setShort(index++, (short) key.type().getId());
+                    statement.setTimestamp(index++, new Timestamp(key.bucketStart()));
+                    statement.setDouble(index++, rollup.getMinValue());
+                    statement.setDouble(index++, rollup.getMaxValue());
+                    statement.setDouble(index++, rollup.getSum());
+                    statement.setLong(index++, rollup.getCount());
+                    statement.setDouble(index++, rollup.getLastValue());
+                    statement.setTimestamp(index++, new Timestamp(rollup.getLastTimestamp()));
+                }
+
+                return statement;
+            });
+
+            offset += rows;
+        }
+    }
+
+    /**
+     * Reads the buckets of one sensor of a plant within a time range, oldest first, passing each
+     * row to the consumer as soon as it is read.
+     *
+     * @param resolution the rollup resolution to read
+     * @param plantId the plant identifier
+     * @param type the sensor type
+     * @param from inclusive range start
+     * @param to exclusive range end
+     * @param limit maximum number of buckets to read
+     * @param consumer receives every bucket
+     */
+    public void findRange(RollupResolution resolution, int plantId, SensorDataType type, Instant from, Instant to, int limit, Consumer<SensorHistoryPointDTO> consumer)
+    {
+        jdbcTemplate.query("SELECT bucket_start, min_value, max_value, sum_value, sample_count, last_value FROM " + TABLE +
+                        " WHERE resolution = ? AND plant_id = ? AND sensor_type = ? AND bucket_start >= ? AND bucket_start < ?" +
+                        " ORDER BY bucket_start LIMIT ?",
+                (RowCallbackHandler) resultSet -> consumer.accept(new SensorHistoryPointDTO(
+                        resultSet.getTimestamp(1).toInstant(),
+                        resultSet.getDouble(2),
+                        resultSet.getDouble(3),
+                        resultSet.getDouble(4) / resultSet.getLong(5),
+                        resultSet.getDouble(6),
+                        resultSet.getLong(5)
+                )),
+                (short) resolution.getId(), plantId, (short) type.getId(), Timestamp.from(from), Timestamp.from(to), limit);
+    }
+
+    /**
+     * @param resolution the rollup resolution to clean up
+     * @param cutoff buckets starting before this instant are deleted
+     * @return number of deleted buckets
+     */
+    public int deleteOlderThan(RollupResolution resolution, Instant cutoff)
+    {
+        return jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE resolution = ? AND bucket_start < ?",
+                (short) resolution.getId(), Timestamp.from(cutoff));
+    }
+
+    private static String buildUpsert(int rows)
+    {
+        StringBuilder builder = new StringBuilder(INSERT_PREFIX.length() + UPSERT_SUFFIX.length() + rows * 24).append(INSERT_PREFIX);
+
+        for (int i = 0; i < rows; i++)
+        {
+            builder.append(i == 0 ? "" : ",").append("(?,?,?,?,?,?,?,?,?,?)");
+        }
+
+        return builder.append(UPSERT_SUFFIX).toString();
+    }
+}
@@ -1,11 +1,14 @@
 package pl.Dayfit.Florae.Repositories.JPA;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import pl.Dayfit.Florae.Entities.FloraLink;
 import pl.Dayfit.Florae.Entities.FloraeUser;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +22,10 @@ import java.util.Optional;
  *   associated with a specific {@code FloraeUsers}.
  * - {@code findByApiKey}: Retrieves a {@code FloraLink} entity associated
  *   with a specific API key.
+ * - {@code findOwnerIdsByFloraLinkIds}: Retrieves the ids of the users owning
+ *   any of the given {@code FloraLink} entities.
+ * - {@code updateWateringDate}: Moves the watering date of a {@code FloraLink}
+ *   forward without loading the entity.
 
  * Annotations:
  * - {@code @Repository}: Marks this interface as a Spring Data repository.
@@ -31,4 +38,9 @@ public interface FloraLinkRepository extends JpaRepository<FloraLink, Integer> {
     Optional<List<FloraLink>> findByOwnerId(Integer ownerId);
     @Query("SELECT a.floraeUser FROM ApiKey a WHERE a.linkedFloraLink = :floraLink")
     Optional<FloraeUser> findOwnerByFloraLink(FloraLink floraLink);
+    @Query("SELECT DISTINCT a.floraeUser.id FROM ApiKey a WHERE a.linkedFloraLink.id IN :floraLinkIds")
+    List<Integer> findOwnerIdsByFloraLinkIds(Collection<Integer> floraLinkIds);
+    @Modifying
+    @Query("UPDATE FloraLink f SET f.wateringDate = :wateringDate WHERE f.id = :id AND (f.wateringDate IS NULL OR f.wateringDate < :wateringDate)")
+    int updateWateringDate(Integer id, Instant wateringDate);
 }
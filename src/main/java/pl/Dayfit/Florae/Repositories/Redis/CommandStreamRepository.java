@@ -0,0 +1,119 @@
+package pl.Dayfit.Florae.Repositories.Redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unacknowledged commands of a FloraLink, kept in a Redis stream {@code floralink-commands:{floraLinkId}}.
+ * <p>
+ * The entry id doubles as the command id and carries the issue time in milliseconds. An acknowledged
+ * command is deleted from the stream. Entries older than the maximum age are trimmed on every append
+ * ({@code XADD MINID}) and skipped when reading, and an idle stream expires after the maximum age.
+ * <p>
+ * The node a FloraLink is connected to consumes its stream with {@link #read}, a blocking
+ * {@code XREAD} over the streams of all devices of the node.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CommandStreamRepository {
+    private static final String KEY_PREFIX = "floralink-commands:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param floraLinkId the FloraLink identifier
+     * @param fields the command fields
+     * @param maxAge how long a command stays deliverable
+     * @return the id of the appended command
+     */
+    public String append(int floraLinkId, Map<String, String> fields, Duration maxAge)
+    {
+        String key = key(floraLinkId);
+        RecordId oldest = RecordId.of(System.currentTimeMillis() - maxAge.toMillis(), 0);
+        RecordId id = stringRedisTemplate.opsForStream().add(key, fields, RedisStreamCommands.XAddOptions.none().minId(oldest));
+        stringRedisTemplate.expire(key, maxAge);
+
+        return id.getValue();
+    }
+
+    /**
+     * Waits for commands appended after the given ids.
+     *
+     * @param cursors the id of the last command read, by FloraLink identifier
+     * @param count the maximum number of commands read per FloraLink
+     * @param block how long to wait for a command if there is none yet
+     * @return the commands read, oldest first, by FloraLink identifier; empty if none arrived in time
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Integer, List<MapRecord<String, Object, Object>>> read(Map<Integer, String> cursors, int count, Duration block)
+    {
+        StreamOffset<String>[] offsets = cursors.entrySet().stream()
+                .map(cursor -> StreamOffset.create(key(cursor.getKey()), ReadOffset.from(cursor.getValue())))
+                .toArray(StreamOffset[]::new);
+
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(StreamReadOptions.empty().count(count).block(block), offsets);
+        Map<Integer, List<MapRecord<String, Object, Object>>> commands = new LinkedHashMap<>();
+
+        if (records == null)
+        {
+            return commands;
+        }
+
+        for (MapRecord<String, Object, Object> record : records)
+        {
+            int floraLinkId = Integer.parseInt(record.getStream().substring(KEY_PREFIX.length()));
+            commands.computeIfAbsent(floraLinkId, id -> new ArrayList<>()).add(record);
+        }
+
+        return commands;
+    }
+
+    /**
+     * @param maxAge how long a command stays deliverable
+     * @return the id preceding every command issued within the maximum age, to read them all from
+     */
+    public static String oldestId(Duration maxAge)
+    {
+        return RecordId.of(System.currentTimeMillis() - maxAge.toMillis(), 0).getValue();
+    }
+
+    /**
+     * Removes an acknowledged command.
+     *
+     * @param floraLinkId the FloraLink identifier
+     * @param commandId the command id
+     * @return the fields of the command, or {@code null} if it was already acknowledged or expired
+     */
+    public Map<Object, Object> acknowledge(int floraLinkId, String commandId)
+    {
+        String key = key(floraLinkId);
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(key, Range.closed(commandId, commandId));
+        Long deleted = stringRedisTemplate.opsForStream().delete(key, commandId);
+
+        if (records == null || records.isEmpty() || deleted == null || deleted == 0)
+        {
+            return null;
+        }
+
+        return records.getFirst().getValue();
+    }
+
+    private static String key(int floraLinkId)
+    {
+        return KEY_PREFIX + floraLinkId;
+    }
+}
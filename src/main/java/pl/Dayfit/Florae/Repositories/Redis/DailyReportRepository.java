@@ -1,10 +1,314 @@
 package pl.Dayfit.Florae.Repositories.Redis;
 
-import org.springframework.data.repository.CrudRepository;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 import pl.Dayfit.Florae.Entities.Redis.DailyReport;
+import pl.Dayfit.Florae.Entities.Redis.DailyReportDelta;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Utils.QuantileSketch;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Stores daily reports as flat Redis hashes ({@code daily-report:{<plantId>}}). Every sensor owns a ring
+ * of {@link DailyReport#BUCKETS} hourly buckets with one field per statistic, e.g.
+ * {@code SOIL_MOISTURE:7:min} or {@code SOIL_MOISTURE:7:count} for the bucket in slot 7.
+ * <p>
+ * Updates are applied by a Lua script, so merging the readings of a plant is atomic and concurrent
+ * writers on different nodes never overwrite each other's readings. The deltas of many plants are
+ * merged in one pipeline. Reads combine
+ * the buckets that still fall into the sliding {@link DailyReport#WINDOW}.
+ * <p>
+ * Next to every sensor hour a {@link QuantileSketch} is kept in {@code daily-sketch:{<plantId>}:<type>:<hour>}
+ * as a hash of bucket counts, so percentiles of the window are computed by merging at most
+ * {@link DailyReport#BUCKETS} small sketches instead of reading raw samples.
+ * <p>
+ * The plant id is the hash tag of all these keys, so they share one Redis Cluster slot and the merge
+ * script may touch them together.
+ */
 @Repository
-public interface DailyReportRepository extends CrudRepository<DailyReport, String> {
-    DailyReport findDailyReportById(String id);
+@RequiredArgsConstructor
+public class DailyReportRepository {
+    private static final String KEY_PREFIX = "daily-report:";
+    private static final String SKETCH_KEY_PREFIX = "daily-sketch:";
+    private static final RedisScript<Long> MERGE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/daily-report-merge.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Merges several deltas in one pipeline. The pipeline loads the merge script first, so the
+     * {@code EVALSHA}s after it never meet an empty script cache. If the pipeline fails, deltas sent
+     * before the failure may already be applied.
+     *
+     * @param deltas the readings to merge, at most one delta per plant
+     */
+    public void mergeAll(List<DailyReportDelta> deltas)
+    {
+        if (deltas.isEmpty())
+        {
+            return;
+        }
+
+        List<byte[][]> invocations = new ArrayList<>(deltas.size());
+        List<Integer> keyCounts = new ArrayList<>(deltas.size());
+
+        for (DailyReportDelta delta : deltas)
+        {
+            List<String> keys = new ArrayList<>(1 + delta.size());
+            List<String> args = scriptArguments(delta, "", 0, keys);
+            byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+
+            for (int i = 0; i < keys.size(); i++)
+            {
+                keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            for (int i = 0; i < args.size(); i++)
+            {
+                keysAndArgs[keys.size() + i] = args.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            invocations.add(keysAndArgs);
+            keyCounts.add(keys.size());
+        }
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection ->
+        {
+            connection.scriptingCommands().scriptLoad(MERGE_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < invocations.size(); i++)
+            {
+                connection.scriptingCommands().evalSha(MERGE_SCRIPT.getSha1(), ReturnType.INTEGER, keyCounts.get(i), invocations.get(i));
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Merges a delta unless a delta with the same or a later guard position was already merged.
+     *
+     * @param delta the readings to merge
+     * @param guardField hash field holding the last merged position, or an empty string for no guard
+     * @param guardPosition position of the delta
+     * @return whether the delta was merged
+     */
+    public boolean merge(DailyReportDelta delta, String guardField, long guardPosition)
+    {
+        List<String> keys = new ArrayList<>(1 + delta.size());
+        List<String> args = scriptArguments(delta, guardField, guardPosition, keys);
+
+        Long merged = stringRedisTemplate.execute(MERGE_SCRIPT, keys, args.toArray());
+        return merged == null || merged >= 0;
+    }
+
+    public DailyReport findDailyReportById(String id)
+    {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(reportKey(id));
+
+        if (fields.isEmpty())
+        {
+            return null;
+        }
+
+        DailyReport report = new DailyReport();
+        report.setId(id);
+        report.setOwner((String) fields.get("owner"));
+        report.setFloraLinkId(Integer.valueOf((String) fields.get("floraLinkId")));
+
+        long currentHour = DailyReport.hourOf(System.currentTimeMillis());
+        Map<SensorDataType, DailyReport.DailyReadings> readings = new EnumMap<>(SensorDataType.class);
+        List<String> sketchKeys = new ArrayList<>();
+        List<SensorDataType> sketchTypes = new ArrayList<>();
+
+        for (SensorDataType type : SensorDataType.values())
+        {
+            DailyReport.DailyReadings reading = readWindow(fields, type, currentHour, hour ->
+            {
+                sketchKeys.add(sketchKey(id, type, hour));
+                sketchTypes.add(type);
+            });
+
+            if (reading != null)
+            {
+                readings.put(type, reading);
+            }
+        }
+
+        readPercentiles(readings, sketchKeys, sketchTypes);
+
+        report.setDailyReadings(readings);
+        return report;
+    }
+
+    private void readPercentiles(Map<SensorDataType, DailyReport.DailyReadings> readings, List<String> sketchKeys, List<SensorDataType> sketchTypes)
+    {
+        if (sketchKeys.isEmpty())
+        {
+            return;
+        }
+
+        List<Object> sketchHashes = stringRedisTemplate.executePipelined(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(@NonNull RedisOperations<K, V> operations)
+            {
+                sketchKeys.forEach(key -> operations.opsForHash().entries((K) key));
+                return null;
+            }
+        });
+
+        Map<SensorDataType, QuantileSketch> sketches = new EnumMap<>(SensorDataType.class);
+
+        for (int i = 0; i < sketchHashes.size(); i++)
+        {
+            QuantileSketch sketch = sketches.computeIfAbsent(sketchTypes.get(i), type -> new QuantileSketch());
+            ((Map<?, ?>) sketchHashes.get(i)).forEach((bucket, count) -> sketch.addBucket((String) bucket, Long.parseLong((String) count)));
+        }
+
+        sketches.forEach((type, sketch) ->
+        {
+            if (sketch.isEmpty())
+            {
+                return;
+            }
+
+            DailyReport.DailyReadings reading = readings.get(type);
+            reading.setP5Value(sketch.quantile(0.05));
+            reading.setP50Value(sketch.quantile(0.5));
+            reading.setP95Value(sketch.quantile(0.95));
+        });
+    }
+
+    private static List<String> scriptArguments(DailyReportDelta delta, String guardField, long guardPosition, List<String> keys)
+    {
+        keys.add(reportKey(delta.getPlantId().toString()));
+
+        long currentHour = DailyReport.hourOf(System.currentTimeMillis());
+        List<String> args = new ArrayList<>(7 + delta.size() * 9);
+        args.add(delta.getOwner());
+        args.add(delta.getFloraLinkId().toString());
+        args.add(Integer.toString(DailyReport.BUCKETS));
+        args.add(Long.toString(currentHour));
+        args.add(Long.toString(DailyReport.WINDOW.plus(DailyReport.BUCKET_SIZE).toMillis()));
+        args.add(guardField);
+        args.add(Long.toString(guardPosition));
+
+        delta.forEach(readings ->
+        {
+            // device clocks may run a little ahead of this node (see SensorFrame), such readings count into the current hour
+            long hour = Math.min(readings.getHour(), currentHour);
+
+            args.add(readings.getType().name());
+            args.add(Long.toString(hour));
+            args.add(Long.toString(readings.getCount()));
+            args.add(Double.toString(readings.getSum()));
+            args.add(Double.toString(readings.getMinValue()));
+            args.add(Long.toString(readings.getMinTimestamp()));
+            args.add(Double.toString(readings.getMaxValue()));
+            args.add(Long.toString(readings.getMaxTimestamp()));
+
+            int countIndex = args.size();
+            args.add(null);
+            readings.getSketch().forEachBucket((bucket, count) ->
+            {
+                args.add(bucket);
+                args.add(Integer.toString(count));
+            });
+            args.set(countIndex, Integer.toString((args.size() - countIndex - 1) / 2));
+
+            keys.add(sketchKey(delta.getPlantId().toString(), readings.getType(), hour));
+        });
+
+        return args;
+    }
+
+    private static String reportKey(String plantId)
+    {
+        return KEY_PREFIX + "{" + plantId + "}";
+    }
+
+    private static String sketchKey(String plantId, SensorDataType type, long hour)
+    {
+        return SKETCH_KEY_PREFIX + "{" + plantId + "}:" + type.name() + ":" + hour;
+    }
+
+    private static DailyReport.DailyReadings readWindow(Map<Object, Object> fields, SensorDataType type, long currentHour, LongConsumer hourConsumer)
+    {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        long minTimestamp = 0;
+        long maxTimestamp = 0;
+        long firstHour = Long.MAX_VALUE;
+
+        for (int slot = 0; slot < DailyReport.BUCKETS; slot++)
+        {
+            String prefix = type.name() + ":" + slot + ":";
+            String hourField = (String) fields.get(prefix + "hour");
+
+            if (hourField == null)
+            {
+                continue;
+            }
+
+            long hour = Long.parseLong(hourField);
+
+            if (hour <= currentHour - DailyReport.BUCKETS || hour > currentHour)
+            {
+                continue;
+            }
+
+            count += Long.parseLong((String) fields.get(prefix + "count"));
+            sum += Double.parseDouble((String) fields.get(prefix + "sum"));
+            firstHour = Math.min(firstHour, hour);
+            hourConsumer.accept(hour);
+
+            double bucketMin = Double.parseDouble((String) fields.get(prefix + "min"));
+            if (bucketMin < min)
+            {
+                min = bucketMin;
+                minTimestamp = Long.parseLong((String) fields.get(prefix + "minTs"));
+            }
+
+            double bucketMax = Double.parseDouble((String) fields.get(prefix + "max"));
+            if (bucketMax > max)
+            {
+                max = bucketMax;
+                maxTimestamp = Long.parseLong((String) fields.get(prefix + "maxTs"));
+            }
+        }
+
+        if (count == 0)
+        {
+            return null;
+        }
+
+        DailyReport.DailyReadings reading = new DailyReport.DailyReadings();
+        reading.setType(type);
+        reading.setCount((int) count);
+        reading.setAvgValue(sum / count);
+        reading.setAvgInitialTimestamp(Instant.ofEpochMilli(firstHour * DailyReport.BUCKET_SIZE.toMillis()));
+        reading.setMinValue(min);
+        reading.setMinTimestamp(Instant.ofEpochMilli(minTimestamp));
+        reading.setMaxValue(max);
+        reading.setMaxTimestamp(Instant.ofEpochMilli(maxTimestamp));
+
+        return reading;
+    }
 }
@@ -0,0 +1,66 @@
+package pl.Dayfit.Florae.Repositories.Redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The latest published reading of every sensor of a FloraLink, kept in a Redis hash
+ * {@code latest-readings:{floraLinkId}} mapping the sensor type to its value.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LatestReadingsRepository {
+    private static final String KEY_PREFIX = "latest-readings:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param floraLinkId the FloraLink identifier
+     * @param readings the changed readings by sensor type
+     */
+    public void save(int floraLinkId, Map<String, String> readings)
+    {
+        stringRedisTemplate.opsForHash().putAll(KEY_PREFIX + floraLinkId, readings);
+    }
+
+    /**
+     * Reads the latest readings of several FloraLinks in one pipeline.
+     *
+     * @param floraLinkIds the FloraLink identifiers
+     * @return the readings by sensor type of every FloraLink that has any, in the given order
+     */
+    public Map<Integer, Map<String, String>> findAll(List<Integer> floraLinkIds)
+    {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection ->
+        {
+            for (Integer floraLinkId : floraLinkIds)
+            {
+                connection.hashCommands().hGetAll((KEY_PREFIX + floraLinkId).getBytes(StandardCharsets.UTF_8));
+            }
+
+            return null;
+        });
+
+        Map<Integer, Map<String, String>> readings = new LinkedHashMap<>();
+
+        for (int i = 0; i < floraLinkIds.size(); i++)
+        {
+            if (results.get(i) instanceof Map<?, ?> fields && !fields.isEmpty())
+            {
+                Map<String, String> values = new HashMap<>();
+                fields.forEach((type, value) -> values.put(String.valueOf(type), String.valueOf(value)));
+                readings.put(floraLinkIds.get(i), values);
+            }
+        }
+
+        return readings;
+    }
+}
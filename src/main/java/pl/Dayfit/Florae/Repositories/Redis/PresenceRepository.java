@@ -0,0 +1,162 @@
+package pl.Dayfit.Florae.Repositories.Redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Presence of FloraLinks and users in the cluster.
+ * <p>
+ * A FloraLink has one session, stored as a {@code presence:floralink:{id}} hash holding the id of the
+ * node that owns it ({@code node}) and when that node last received a frame from it ({@code seen}). A
+ * user can be connected to several nodes at once, so {@code presence:user:{name}} is a sorted set of
+ * node ids scored by the time their presence expires. Keys expire unless a node refreshes them. A
+ * connecting FloraLink takes its key over, while heartbeats only take a key from another node if they
+ * received a frame from the FloraLink more recently than that node did.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PresenceRepository {
+    private static final String KEY_PREFIX = "presence:floralink:";
+    private static final String USER_KEY_PREFIX = "presence:user:";
+    private static final byte[] NODE_FIELD = "node".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEEN_FIELD = "seen".getBytes(StandardCharsets.UTF_8);
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<Long>> EXTEND_SCRIPT = (RedisScript<List<Long>>) (RedisScript<?>) RedisScript.of(new ClassPathResource("scripts/presence-extend.lua"), List.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/presence-release.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Marks a FloraLink as owned by a node, replacing any previous owner. Used when it connects.
+     *
+     * @param floraLinkId the FloraLink identifier
+     * @param nodeId the node id
+     * @param ttl how long the presence lasts without another refresh
+     */
+    public void takeOver(int floraLinkId, String nodeId, Duration ttl)
+    {
+        byte[] key = (KEY_PREFIX + floraLinkId).getBytes(StandardCharsets.UTF_8);
+        Map<byte[], byte[]> fields = Map.of(
+                NODE_FIELD, nodeId.getBytes(StandardCharsets.UTF_8),
+                SEEN_FIELD, Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8)
+        );
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection ->
+        {
+            connection.hashCommands().hMSet(key, fields);
+            connection.keyCommands().pExpire(key, ttl.toMillis());
+            return null;
+        });
+    }
+
+    /**
+     * Extends the presence of FloraLinks connected to a node, in one script call. A FloraLink owned by
+     * another node is taken over only if this node received a frame from it more recently, i.e. the
+     * other node holds a stale session; otherwise it is left alone.
+     *
+     * @param floraLinkIds the FloraLinks connected to the node
+     * @param lastSeen when the node last received a frame from each of them, in epoch milliseconds
+     * @param nodeId the node id
+     * @param ttl how long the presence lasts without another refresh
+     * @return the FloraLinks owned by another node that received a frame from them more recently
+     */
+    public List<Integer> extend(List<Integer> floraLinkIds, List<Long> lastSeen, String nodeId, Duration ttl)
+    {
+        List<String> keys = floraLinkIds.stream().map(floraLinkId -> KEY_PREFIX + floraLinkId).toList();
+        Object[] args = new Object[2 + lastSeen.size()];
+        args[0] = nodeId;
+        args[1] = Long.toString(ttl.toMillis());
+
+        for (int i = 0; i < lastSeen.size(); i++)
+        {
+            args[2 + i] = Long.toString(lastSeen.get(i));
+        }
+
+        List<Long> lost = stringRedisTemplate.execute(EXTEND_SCRIPT, keys, args);
+
+        if (lost == null)
+        {
+            return List.of();
+        }
+
+        return lost.stream().map(index -> floraLinkIds.get(index.intValue() - 1)).toList();
+    }
+
+    /**
+     * @param floraLinkId the FloraLink identifier
+     * @return the id of the node owning its session, or {@code null} if it is offline
+     */
+    public String findNode(int floraLinkId)
+    {
+        return (String) stringRedisTemplate.opsForHash().get(KEY_PREFIX + floraLinkId, "node");
+    }
+
+    /**
+     * Removes the presence of a FloraLink unless another node took it over in the meantime.
+     *
+     * @param floraLinkId the FloraLink identifier
+     * @param nodeId the node releasing it
+     */
+    public void release(int floraLinkId, String nodeId)
+    {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(KEY_PREFIX + floraLinkId), nodeId);
+    }
+
+    /**
+     * Marks users as connected to a node, in one pipeline.
+     *
+     * @param usernames the users connected to the node
+     * @param nodeId the node id
+     * @param ttl how long the presence lasts without another refresh
+     */
+    public void refreshUsers(Collection<String> usernames, String nodeId, Duration ttl)
+    {
+        byte[] node = nodeId.getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection ->
+        {
+            for (String username : usernames)
+            {
+                byte[] key = userKey(username);
+                connection.zSetCommands().zAdd(key, now + ttl.toMillis(), node, RedisZSetCommands.ZAddArgs.empty());
+                connection.zSetCommands().zRemRangeByScore(key, Double.NEGATIVE_INFINITY, now);
+                connection.keyCommands().pExpire(key, ttl.toMillis());
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * @param username the username
+     * @return the ids of the nodes the user is connected to, possibly empty
+     */
+    public Set<String> findUserNodes(String username)
+    {
+        Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(USER_KEY_PREFIX + username, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        return nodes == null ? Set.of() : nodes;
+    }
+
+    public void releaseUser(String username, String nodeId)
+    {
+        stringRedisTemplate.opsForZSet().remove(USER_KEY_PREFIX + username, nodeId);
+    }
+
+    private static byte[] userKey(String username)
+    {
+        return (USER_KEY_PREFIX + username).getBytes(StandardCharsets.UTF_8);
+    }
+}
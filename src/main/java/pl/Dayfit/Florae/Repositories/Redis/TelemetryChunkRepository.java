@@ -0,0 +1,105 @@
+package pl.Dayfit.Florae.Repositories.Redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.POJOs.TelemetryChunk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores {@link TelemetryChunk}s as members of a sorted set per plant sensor
+ * ({@code recent-chunks:{plantId}:{type}}) scored by the timestamp of their first point.
+ * Members are the raw chunk bytes, so a range query is a single {@code ZRANGEBYSCORE}. A chunk that is
+ * still being filled is stored again on every flush, replacing the member with the same score.
+ * <p>
+ * {@code recent-chunks-since} holds the time the first node started recording, so readers can tell
+ * whether the chunks cover a range at all.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TelemetryChunkRepository {
+    private static final String KEY_PREFIX = "recent-chunks:";
+    private static final String SINCE_KEY = "recent-chunks-since";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Adds or replaces chunks in their sorted sets in one pipeline, trimming chunks older than the retention.
+     *
+     * @param chunks the chunks to store
+     * @param retentionMillis how long chunks are kept
+     */
+    public void saveAll(Collection<TelemetryChunk> chunks, long retentionMillis)
+    {
+        long oldest = System.currentTimeMillis() - retentionMillis;
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection ->
+        {
+            for (TelemetryChunk chunk : chunks)
+            {
+                byte[] key = key(chunk.plantId(), chunk.type());
+                connection.zSetCommands().zRemRangeByScore(key, chunk.firstTimestamp(), chunk.firstTimestamp());
+                connection.zSetCommands().zAdd(key, chunk.firstTimestamp(), chunk.data(), RedisZSetCommands.ZAddArgs.empty());
+                connection.zSetCommands().zRemRangeByScore(key, Double.NEGATIVE_INFINITY, oldest);
+                connection.keyCommands().pExpire(key, retentionMillis);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * @param plantId the plant identifier
+     * @param type the sensor type
+     * @param fromFirstTimestamp inclusive lower bound of the first point timestamp
+     * @param toFirstTimestamp exclusive upper bound of the first point timestamp
+     * @return the chunks ordered by their first timestamp
+     */
+    public List<TelemetryChunk> findChunks(int plantId, SensorDataType type, long fromFirstTimestamp, long toFirstTimestamp)
+    {
+        Set<Tuple> chunks = stringRedisTemplate.execute((RedisCallback<Set<Tuple>>) connection ->
+                connection.zSetCommands().zRangeByScoreWithScores(key(plantId, type), fromFirstTimestamp, Math.nextDown((double) toFirstTimestamp)));
+
+        if (chunks == null)
+        {
+            return List.of();
+        }
+
+        List<TelemetryChunk> found = new ArrayList<>(chunks.size());
+
+        for (Tuple chunk : chunks)
+        {
+            found.add(new TelemetryChunk(plantId, type, chunk.getScore().longValue(), chunk.getValue()));
+        }
+
+        return found;
+    }
+
+    /**
+     * Records the start of recording unless a node did already.
+     *
+     * @param now the current time in epoch milliseconds
+     * @return the time recording started in epoch milliseconds
+     */
+    public long markRecordingSince(long now)
+    {
+        stringRedisTemplate.opsForValue().setIfAbsent(SINCE_KEY, Long.toString(now));
+        String since = stringRedisTemplate.opsForValue().get(SINCE_KEY);
+
+        return since == null ? now : Long.parseLong(since);
+    }
+
+    private static byte[] key(int plantId, SensorDataType type)
+    {
+        return (KEY_PREFIX + plantId + ":" + type.name()).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,32 @@
+package pl.Dayfit.Florae.Repositories.Redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Watering leases of FloraLinks, stored as {@code watering-lease:{floraLinkId}} keys that expire
+ * on their own. A lease is taken with a single {@code SET NX PX}, so only one node can win it.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WateringLeaseRepository {
+    private static final String KEY_PREFIX = "watering-lease:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param floraLinkId the FloraLink identifier
+     * @param wateredAt the watering time, stored as the lease value
+     * @param duration how long the lease is held
+     * @return whether the lease was acquired, {@code false} if another watering holds it
+     */
+    public boolean tryAcquire(int floraLinkId, Instant wateredAt, Duration duration)
+    {
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + floraLinkId, Long.toString(wateredAt.toEpochMilli()), duration);
+        return Boolean.TRUE.equals(acquired);
+    }
+}
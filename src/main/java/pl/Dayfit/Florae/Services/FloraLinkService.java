@@ -2,11 +2,10 @@ package pl.Dayfit.Florae.Services;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import pl.Dayfit.Florae.DTOs.FloraLinkSetNameDTO;
 import pl.Dayfit.Florae.DTOs.Sensors.*;
 import pl.Dayfit.Florae.DTOs.Sensors.Commands.Command;
@@ -14,17 +13,27 @@ import pl.Dayfit.Florae.DTOs.Sensors.Commands.CommandMessage;
 import pl.Dayfit.Florae.Entities.*;
 import pl.Dayfit.Florae.Entities.Redis.DailyReport;
 import pl.Dayfit.Florae.Enums.CommandType;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Enums.SensorAlertType;
 import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Events.ApiKeyRevokedEvent;
 import pl.Dayfit.Florae.Events.CurrentDataUploadedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
 import pl.Dayfit.Florae.Exceptions.DeviceOfflineException;
-import pl.Dayfit.Florae.Repositories.Redis.DailyReportRepository;
+import pl.Dayfit.Florae.POJOs.DeviceContext;
+import pl.Dayfit.Florae.POJOs.PlantRules;
 import pl.Dayfit.Florae.Services.Auth.JWT.FloraeUserCacheService;
-import pl.Dayfit.Florae.Services.WebSockets.SessionService;
+import pl.Dayfit.Florae.Services.Telemetry.DailyReportBufferService;
+import pl.Dayfit.Florae.Services.Telemetry.LatestReadingsStore;
+import pl.Dayfit.Florae.Services.WebSockets.DashboardCoalescer;
+import pl.Dayfit.Florae.Services.WebSockets.DeviceCommandService;
+import pl.Dayfit.Florae.Services.WebSockets.FanoutPublisher;
+import pl.Dayfit.Florae.Services.WebSockets.PresenceRegistry;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service class responsible for handling operations related to FloraLink data,
@@ -34,51 +43,55 @@ import java.util.NoSuchElementException;
  */
 @Service
 @RequiredArgsConstructor
-public class FloraLinkService {
+public class FloraLinkService implements PlantRules.ActionSink {
     private final FloraeUserCacheService floraeUserCacheService;
     private final FloraLinkCacheService cacheService;
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final DailyReportRepository dailyReportRepository;
-    private final SessionService sessionService;
+    private final FanoutPublisher fanoutPublisher;
+    private final DashboardCoalescer dashboardCoalescer;
+    private final DeviceCommandService deviceCommandService;
+    private final DailyReportBufferService dailyReportBufferService;
+    private final LatestReadingsStore latestReadingsStore;
+    private final PresenceRegistry presenceRegistry;
+    private final WateringService wateringService;
+    private final Map<Integer, PlantRules.State> ruleStates = new ConcurrentHashMap<>();
 
-    @Transactional
     @EventListener
     public void handleCurrentDataUpload(CurrentDataUploadedEvent event)
     {
-        Authentication authentication = event.authentication();
-        Plant linkedPlant = event.plant();
-        List<CurrentSensorDataDTO> uploadedData = event.data();
-        CurrentSensorDataDTO soilMoistureData = uploadedData.stream().filter(data -> data.getType().equals(SensorDataType.SOIL_MOISTURE.toString())).findFirst().orElse(null);
-        Double minimalSoilMoisture = linkedPlant.getPotVolume();
-
-        String ownerUsername = ((FloraeUser) authentication
-                .getPrincipal())
-                .getUsername();
+        DeviceContext context = event.context();
+        PlantRules.State state = ruleStates.computeIfAbsent(context.floraLinkId(), key -> new PlantRules.State());
+        context.rules().evaluate(context, event.values(), state, this);
 
-        Integer floraLinkId = ((ApiKey) authentication
-                .getCredentials())
-                .getLinkedFloraLink()
-                .getId();
+        List<CurrentSensorDataDTO> changed = latestReadingsStore.update(context.floraLinkId(), event.values());
 
-        FloraLink floraLink = cacheService.getFloraLink(floraLinkId);
+        if (!changed.isEmpty())
+        {
+            dashboardCoalescer.offer(context.owner(), context.floraLinkId(), changed);
+        }
+    }
 
-        if (soilMoistureData != null && minimalSoilMoisture != null && linkedPlant.getRequirements().getMinSoilMoist() > soilMoistureData.getValue() && (floraLink.getWateringDate() == null || Duration.between(floraLink.getWateringDate(), Instant.now()).toMinutes() > 30))
+    /**
+     * Drops the alert state of a FloraLink when it disconnects, so alerts still raised are sent again
+     * after it reconnects, possibly to another node.
+     */
+    @EventListener
+    public void forgetRuleState(WebSocketConnectionClosedEvent event)
+    {
+        if (event.connectionType() == ConnectionType.FLORALINK && event.session().getAttributes().get("id") instanceof Integer floraLinkId)
         {
-            redisTemplate.convertAndSend("floralink." + floraLinkId, new CommandMessage(
-                    CommandType.WATERING,
-                    calculateWaterToAdd(
-                            linkedPlant.getPotVolume(),
-                            ((double) linkedPlant.getRequirements().getMinSoilMoist() + linkedPlant.getRequirements().getMaxSoilMoist()) / 2,
-                            soilMoistureData.getValue()
-                    )
-                )
-            );
-
-            floraLink.setWateringDate(Instant.now());
+            ruleStates.remove(floraLinkId);
         }
+    }
+
+    @TransactionalEventListener
+    public void forgetRuleState(ApiKeyRevokedEvent event)
+    {
+        FloraLink floraLink = event.apiKey().getLinkedFloraLink();
 
-        CurrentSensorResponseDataDTO mappedDTO = new CurrentSensorResponseDataDTO(floraLinkId, uploadedData);
-        redisTemplate.convertAndSend("user." + ownerUsername, mappedDTO);
+        if (floraLink != null)
+        {
+            ruleStates.remove(floraLink.getId());
+        }
     }
 
     @Transactional(readOnly = true)
@@ -87,7 +100,7 @@ public class FloraLinkService {
 
         return ownedPlants.stream().map(plant ->
         {
-            DailyReport report = dailyReportRepository.findDailyReportById(plant.getId().toString());
+            DailyReport report = dailyReportBufferService.getDailyReport(plant.getId());
 
             if (report == null)
             {
@@ -101,7 +114,10 @@ public class FloraLinkService {
                             dailyReading.getMinTimestamp(),
                             dailyReading.getMaxValue(),
                             dailyReading.getMaxTimestamp(),
-                            dailyReading.getAvgValue()
+                            dailyReading.getAvgValue(),
+                            dailyReading.getP5Value(),
+                            dailyReading.getP50Value(),
+                            dailyReading.getP95Value()
                     )).toList());
         }).toList();
     }
@@ -121,16 +137,19 @@ public class FloraLinkService {
         cacheService.saveFloraLink(floraLink);
     }
 
-    /**
-     * Calculates how much water needs to be added to achieve the recommended moisture value
-     * @param capacityLiters the pot capacity in liters
-     * @param recommendedMoisture the recommended soil moisture value in percents
-     * @param currentMoisture the current soil moisture value in percents
-     * @return the water volume that needs to be added (in milliliters)
-     */
-    private double calculateWaterToAdd(double capacityLiters, double recommendedMoisture, double currentMoisture) {
-        double neededHumidity = recommendedMoisture - currentMoisture;
-        return capacityLiters * neededHumidity * 10; // (neededHumidity / 100.0) * 1000.0 = 10 * neededHumidity
+    @Override
+    public void water(DeviceContext context, double milliliters)
+    {
+        if (wateringService.tryStartWatering(context.floraLinkId()))
+        {
+            deviceCommandService.send(context.floraLinkId(), new CommandMessage(CommandType.WATERING, milliliters));
+        }
+    }
+
+    @Override
+    public void alert(DeviceContext context, SensorDataType type, SensorAlertType alert, double value)
+    {
+        fanoutPublisher.publishToUser(context.owner(), new SensorAlertDTO(context.floraLinkId(), type.toString(), alert, value));
     }
 
     public void handleEnablingBle(Integer floralinkId, String owner) {
@@ -146,11 +165,11 @@ public class FloraLinkService {
             throw new AccessDeniedException("User is not the owner of this device! Cannot enable BLE!");
         }
 
-        if (sessionService.getFloralinkSessionById(floralinkId.toString()) == null)
+        if (!presenceRegistry.isOnline(floralinkId))
         {
             throw new DeviceOfflineException("FloraLink with ID " + floralinkId + " is not connected to WebSocket channel");
         }
 
-        redisTemplate.convertAndSend("floralink." + floralinkId, new Command(CommandType.ENABLE_BLE));
+        deviceCommandService.send(floralinkId, new Command(CommandType.ENABLE_BLE));
     }
 }
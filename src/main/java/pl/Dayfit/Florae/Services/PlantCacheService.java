@@ -4,23 +4,27 @@ import lombok.AllArgsConstructor;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.event.TransactionalEventListener;
 import pl.Dayfit.Florae.Entities.Plant;
 import pl.Dayfit.Florae.Events.ApiKeyRevokedEvent;
+import pl.Dayfit.Florae.Events.PlantUpdatedEvent;
 import pl.Dayfit.Florae.Repositories.JPA.PlantRepository;
 
 import java.util.List;
 
 /**
  * <p>Service responsible for managing and caching the Plant entity in various ways</p>
+ * <p>Every save and delete publishes a {@link PlantUpdatedEvent}, so the contexts of connected FloraLinks follow the plant.</p>
  */
 
 @Service
 @AllArgsConstructor
 public class PlantCacheService {
     private final PlantRepository plantRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     @Cacheable(value = "plant", key = "#id")
@@ -33,12 +37,15 @@ public class PlantCacheService {
     @CacheEvict(value = "plant", key = "#plantId")
     public void deletePlant(Integer plantId) {
         plantRepository.deleteById(plantId);
+        eventPublisher.publishEvent(new PlantUpdatedEvent(plantId));
     }
 
     @CachePut(value = "plant", key = "#plant.id")
     public Plant savePlant(Plant plant)
     {
-        return plantRepository.save(plant);
+        Plant saved = plantRepository.save(plant);
+        eventPublisher.publishEvent(new PlantUpdatedEvent(saved.getId()));
+        return saved;
     }
 
     @Cacheable(value = "plants", key = "#username")
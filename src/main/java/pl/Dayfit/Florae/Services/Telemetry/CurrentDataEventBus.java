@@ -0,0 +1,88 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.Events.CurrentDataUploadedEvent;
+import pl.Dayfit.Florae.Utils.PartitionedExecutor;
+
+import java.util.List;
+
+/**
+ * Delivers {@link CurrentDataUploadedEvent}s to their listeners off the ingest path.
+ * <p>
+ * Events are partitioned by FloraLink id onto {@code florae.events.lanes} lanes of a
+ * {@link PartitionedExecutor}, so the events of one device reach the listeners in upload order while
+ * a slow listener (the watering check, the user fan-out) never delays the receive loop of a device.
+ * A lane publishes everything queued since its last run as one batch.
+ * <p>
+ * When a lane is full, publishing blocks the receive loop of the device for up to
+ * {@code florae.events.put-timeout-ms}, which slows the devices of that lane down to the pace of the
+ * listeners instead of losing their readings. If the lane is still full after that the event is
+ * dropped and counted in {@code florae.events.lane.rejected}: for that frame no alert is raised or
+ * cleared and no watering is started, so these decisions can be skipped under sustained overload.
+ * They are made again on the next frame of the device, which carries fresh readings.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CurrentDataEventBus {
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${florae.events.lanes:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int lanes;
+
+    @Value("${florae.events.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${florae.events.max-batch:64}")
+    private int maxBatch;
+
+    @Value("${florae.events.put-timeout-ms:500}")
+    private long putTimeoutMillis;
+
+    private PartitionedExecutor<CurrentDataUploadedEvent> executor;
+
+    @PostConstruct
+    public void start()
+    {
+        executor = new PartitionedExecutor<>("florae.events", lanes, queueCapacity, maxBatch, this::deliver, meterRegistry);
+    }
+
+    /**
+     * Queues an event on the lane of its FloraLink, waiting for space if the lane is full.
+     *
+     * @param event the uploaded readings
+     */
+    public void publish(CurrentDataUploadedEvent event)
+    {
+        if (!executor.submit(event.context().floraLinkId(), event, putTimeoutMillis))
+        {
+            log.warn("Event lane of FloraLink {} stayed full for {} ms, dropping readings", event.context().floraLinkId(), putTimeoutMillis);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        executor.close();
+    }
+
+    private void deliver(List<CurrentDataUploadedEvent> batch)
+    {
+        for (CurrentDataUploadedEvent event : batch)
+        {
+            try {
+                eventPublisher.publishEvent(event);
+            } catch (RuntimeException exception) {
+                log.warn("Handling readings of FloraLink {} failed: {}", event.context().floraLinkId(), exception.getMessage());
+            }
+        }
+    }
+}
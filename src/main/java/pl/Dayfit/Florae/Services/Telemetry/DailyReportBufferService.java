@@ -0,0 +1,317 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.Entities.Redis.DailyReport;
+import pl.Dayfit.Florae.Entities.Redis.DailyReportDelta;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrame;
+import pl.Dayfit.Florae.Repositories.Redis.DailyReportRepository;
+import pl.Dayfit.Florae.Utils.IngestJournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer for {@link DailyReport}s.
+ * <p>
+ * Incoming frames are accumulated per plant into a {@link DailyReportDelta} (count, sum, min and max
+ * per sensor and hour). Every {@code florae.daily-report.flush-interval-ms} the pending deltas are detached and
+ * merged into Redis by {@link DailyReportRepository#mergeAll(List)}, up to {@code FLUSH_BATCH} plants per
+ * pipeline, which applies every delta atomically on the server. Redis write load therefore follows the flush rate instead of the device sampling rate,
+ * and several nodes can aggregate readings of the same plant without losing updates. Pending deltas are
+ * also flushed on shutdown.
+ * <p>
+ * When a flush fails, Redis is considered unavailable: the failed deltas are kept in memory and newly
+ * accepted frames are appended to a local {@link IngestJournal} instead. Every following flush replays
+ * the journal in order, merging each frame with its journal position as guard so a frame is never
+ * applied twice, and returns to in-memory buffering once the journal is drained. The last frames are
+ * replayed while appending to the journal is locked, so no frame is left behind in it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DailyReportBufferService {
+    private static final int REPLAY_BATCH = 10_000;
+    private static final int FLUSH_BATCH = 256;
+
+    private final DailyReportRepository dailyReportRepository;
+    private final Map<Integer, DailyReportDelta> pendingDeltas = new ConcurrentHashMap<>();
+    private IngestJournal journal;
+    private String guardField;
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+    private volatile boolean degraded;
+
+    @Value("${florae.journal.enabled:true}")
+    private boolean journalEnabled;
+
+    @Value("${florae.journal.directory:${java.io.tmpdir}/florae-journal}")
+    private Path journalDirectory;
+
+    @Value("${florae.journal.segment-size:16777216}")
+    private int journalSegmentSize;
+
+    @PostConstruct
+    private void init() throws IOException
+    {
+        if (!journalEnabled)
+        {
+            return;
+        }
+
+        journal = new IngestJournal(journalDirectory.resolve("daily-report"), journalSegmentSize);
+        guardField = "journal:" + journal.getId();
+        degraded = journal.hasPending();
+
+        if (degraded)
+        {
+            log.info("Daily report journal has pending frames, replaying them on next flush");
+        }
+    }
+
+    /**
+     * Accumulates a decoded frame into the pending delta of a plant.
+     *
+     * @param plantId the plant the FloraLink is linked to
+     * @param floraLinkId the FloraLink that sent the frame
+     * @param owner the username of the plant owner
+     * @param frame the decoded frame
+     */
+    public void accept(Integer plantId, Integer floraLinkId, String owner, SensorFrame frame)
+    {
+        long sampledAt = frame.getSampledAt().toEpochMilli();
+
+        if (degraded)
+        {
+            journalLock.readLock().lock();
+
+            try {
+                if (degraded && appendToJournal(plantId, floraLinkId, owner, sampledAt, frame))
+                {
+                    return;
+                }
+            } finally {
+                journalLock.readLock().unlock();
+            }
+        }
+
+        pendingDeltas.compute(plantId, (key, delta) ->
+        {
+            DailyReportDelta target = delta == null ? new DailyReportDelta(plantId, floraLinkId, owner) : delta;
+
+            for (SensorDataType type : SensorFrame.TYPES)
+            {
+                if (frame.has(type))
+                {
+                    target.add(type, frame.get(type), sampledAt);
+                }
+            }
+
+            return target;
+        });
+    }
+
+    /**
+     * Returns the daily report of a plant as stored in Redis. Readings accepted within the
+     * last flush interval may not be included yet.
+     *
+     * @param plantId the plant identifier
+     * @return the report, or {@code null} if the plant has no report
+     */
+    public DailyReport getDailyReport(Integer plantId)
+    {
+        return dailyReportRepository.findDailyReportById(plantId.toString());
+    }
+
+    @Scheduled(fixedDelayString = "${florae.daily-report.flush-interval-ms:5000}")
+    public synchronized void flush()
+    {
+        if (degraded && !replayJournal())
+        {
+            return;
+        }
+
+        List<DailyReportDelta> batch = new ArrayList<>(FLUSH_BATCH);
+        int flushed = 0;
+
+        for (Integer plantId : pendingDeltas.keySet())
+        {
+            DailyReportDelta delta = pendingDeltas.remove(plantId);
+
+            if (delta == null)
+            {
+                continue;
+            }
+
+            batch.add(delta);
+
+            if (batch.size() == FLUSH_BATCH)
+            {
+                if (!flushBatch(batch))
+                {
+                    return;
+                }
+
+                flushed += batch.size();
+                batch.clear();
+            }
+        }
+
+        if (flushBatch(batch))
+        {
+            flushed += batch.size();
+        }
+
+        if (flushed > 0)
+        {
+            log.trace("Flushed {} daily report deltas", flushed);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown()
+    {
+        log.info("Flushing {} pending daily report deltas before shutdown", pendingDeltas.size());
+        flush();
+
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+
+    /**
+     * Replays journaled frames in order.
+     *
+     * @return whether the journal was drained
+     */
+    private boolean replayJournal()
+    {
+        try {
+            while (journal.replay(REPLAY_BATCH, this::replayFrame) > 0)
+            {
+                log.debug("Replayed journaled frames into daily reports");
+            }
+
+            if (journal.hasPending())
+            {
+                return false;
+            }
+
+            journalLock.writeLock().lock();
+
+            try {
+                // frames journaled since the replay above, no more can be appended while the lock is held
+                journal.replay(Integer.MAX_VALUE, this::replayFrame);
+
+                if (journal.hasPending())
+                {
+                    return false;
+                }
+
+                degraded = false;
+            } finally {
+                journalLock.writeLock().unlock();
+            }
+
+            log.info("Daily report journal drained, buffering in memory again");
+            return true;
+        } catch (IOException | RuntimeException exception) {
+            log.warn("Replaying daily report journal failed, retrying on next flush: {}", exception.getMessage());
+            return false;
+        }
+    }
+
+    private boolean replayFrame(long position, ByteBuffer record)
+    {
+        int plantId = record.getInt();
+        int floraLinkId = record.getInt();
+        byte[] owner = new byte[record.getShort()];
+        record.get(owner);
+        long sampledAt = record.getLong();
+
+        DailyReportDelta delta = new DailyReportDelta(plantId, floraLinkId, new String(owner, StandardCharsets.UTF_8));
+
+        while (record.hasRemaining())
+        {
+            delta.add(SensorDataType.fromId(record.get() & 0xFF), record.getDouble(), sampledAt);
+        }
+
+        try {
+            dailyReportRepository.merge(delta, guardField, position);
+            return true;
+        } catch (RuntimeException exception) {
+            log.warn("Replaying journaled frame of plant {} failed: {}", plantId, exception.getMessage());
+            return false;
+        }
+    }
+
+    private boolean appendToJournal(Integer plantId, Integer floraLinkId, String owner, long sampledAt, SensorFrame frame)
+    {
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + Short.BYTES + ownerBytes.length + Long.BYTES + frame.size() * (1 + Double.BYTES));
+
+        record.putInt(plantId).putInt(floraLinkId).putShort((short) ownerBytes.length).put(ownerBytes).putLong(sampledAt);
+
+        for (SensorDataType type : SensorFrame.TYPES)
+        {
+            if (frame.has(type))
+            {
+                record.put((byte) type.getId()).putDouble(frame.get(type));
+            }
+        }
+
+        try {
+            journal.append(record.flip());
+            return true;
+        } catch (IOException | RuntimeException exception) {
+            log.error("Appending frame of plant {} to the daily report journal failed, buffering in memory: {}", plantId, exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Merges a batch of deltas, requeueing all of them if that fails.
+     *
+     * @return whether the batch was merged
+     */
+    private boolean flushBatch(List<DailyReportDelta> batch)
+    {
+        if (batch.isEmpty())
+        {
+            return true;
+        }
+
+        try {
+            dailyReportRepository.mergeAll(batch);
+            return true;
+        } catch (RuntimeException exception) {
+            log.warn("Flushing daily reports of {} plants failed, retrying on next flush: {}", batch.size(), exception.getMessage());
+            batch.forEach(this::requeue);
+            degraded = journal != null;
+            return false;
+        }
+    }
+
+    private void requeue(DailyReportDelta failed)
+    {
+        pendingDeltas.merge(failed.getPlantId(), failed, (current, ignored) ->
+        {
+            failed.merge(current);
+            return failed;
+        });
+    }
+}
@@ -0,0 +1,173 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorResponseDataDTO;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Repositories.Redis.LatestReadingsRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest readings of every FloraLink as last published to the dashboards.
+ * <p>
+ * On ingest, a reading is only published if it differs from the last published value of its sensor
+ * by more than the deadband of the sensor type, {@code florae.fanout.deadband.{TYPE}}, or
+ * {@code florae.fanout.deadband.default} if that is not set. The published values are kept locally
+ * for the comparison and in {@link LatestReadingsRepository} for the snapshots sent to dashboards
+ * when they connect, so a snapshot never differs from the live values by more than the deadband. The
+ * local values of a FloraLink are dropped whenever it connects or disconnects and read back from Redis
+ * on its next frame, so they follow the device across nodes.
+ * <p>
+ * Readings of one FloraLink are processed on one lane of {@link CurrentDataEventBus}, so the values of
+ * a device are never updated concurrently.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LatestReadingsStore {
+    private final LatestReadingsRepository latestReadingsRepository;
+    private final Environment environment;
+    private static final SensorDataType[] TYPES = SensorDataType.values();
+
+    private final Map<Integer, double[]> published = new ConcurrentHashMap<>();
+    private final double[] deadbands = new double[TYPES.length];
+
+    @Value("${florae.fanout.deadband.default:0.1}")
+    private double defaultDeadband;
+
+    @PostConstruct
+    void resolveDeadbands()
+    {
+        for (SensorDataType type : TYPES)
+        {
+            deadbands[type.ordinal()] = environment.getProperty("florae.fanout.deadband." + type, Double.class, defaultDeadband);
+        }
+    }
+
+    /**
+     * Records the readings of a frame and returns the ones to publish.
+     *
+     * @param floraLinkId the FloraLink that reported them
+     * @param readings the readings of the frame indexed by {@link SensorDataType#ordinal()}, {@link Double#NaN} if missing
+     * @return the readings that moved beyond their deadband, possibly empty
+     */
+    public List<CurrentSensorDataDTO> update(int floraLinkId, double[] readings)
+    {
+        double[] values = published.computeIfAbsent(floraLinkId, this::loadPublished);
+
+        List<CurrentSensorDataDTO> changed = new ArrayList<>(readings.length);
+        Map<String, String> fields = new HashMap<>();
+
+        for (int index = 0; index < readings.length; index++)
+        {
+            double value = readings[index];
+            double previous = values[index];
+
+            if (Double.isNaN(value) || !Double.isNaN(previous) && Math.abs(value - previous) <= deadbands[index])
+            {
+                continue;
+            }
+
+            String type = TYPES[index].toString();
+            values[index] = value;
+            changed.add(new CurrentSensorDataDTO(type, value));
+            fields.put(type, Double.toString(value));
+        }
+
+        if (!fields.isEmpty())
+        {
+            try {
+                latestReadingsRepository.save(floraLinkId, fields);
+            } catch (RuntimeException exception) {
+                log.warn("Saving latest readings of FloraLink {} failed: {}", floraLinkId, exception.getMessage());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Forgets the published values of a FloraLink when it connects, so they are read again from Redis,
+     * where another node may have updated them in the meantime.
+     */
+    @EventListener
+    public void forget(WebSocketConnectionEstablishedEvent event)
+    {
+        forget(event.session(), event.connectionType());
+    }
+
+    @EventListener
+    public void forget(WebSocketConnectionClosedEvent event)
+    {
+        forget(event.session(), event.connectionType());
+    }
+
+    /**
+     * @param floraLinkIds the FloraLinks to include
+     * @return the latest readings of every given FloraLink that reported any
+     */
+    public List<CurrentSensorResponseDataDTO> snapshot(List<Integer> floraLinkIds)
+    {
+        if (floraLinkIds.isEmpty())
+        {
+            return List.of();
+        }
+
+        List<CurrentSensorResponseDataDTO> snapshot = new ArrayList<>(floraLinkIds.size());
+
+        latestReadingsRepository.findAll(floraLinkIds).forEach((floraLinkId, readings) ->
+        {
+            List<CurrentSensorDataDTO> sensorData = new ArrayList<>(readings.size());
+            readings.forEach((type, value) -> sensorData.add(new CurrentSensorDataDTO(type, Double.parseDouble(value))));
+            snapshot.add(new CurrentSensorResponseDataDTO(floraLinkId, sensorData));
+        });
+
+        return snapshot;
+    }
+
+    private void forget(WebSocketSession session, ConnectionType connectionType)
+    {
+        if (connectionType == ConnectionType.FLORALINK && session.getAttributes().get("id") instanceof Integer floraLinkId)
+        {
+            published.remove(floraLinkId);
+        }
+    }
+
+    private double[] loadPublished(int floraLinkId)
+    {
+        double[] values = new double[deadbands.length];
+        Arrays.fill(values, Double.NaN);
+
+        try {
+            latestReadingsRepository.findAll(List.of(floraLinkId)).getOrDefault(floraLinkId, Map.of()).forEach((label, value) ->
+            {
+                SensorDataType type = SensorDataType.fromLabel(label);
+
+                if (type != null)
+                {
+                    values[type.ordinal()] = Double.parseDouble(value);
+                }
+            });
+        } catch (RuntimeException exception) {
+            log.warn("Reading latest readings of FloraLink {} failed, publishing all: {}", floraLinkId, exception.getMessage());
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,345 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrame;
+import pl.Dayfit.Florae.POJOs.TelemetryChunk;
+import pl.Dayfit.Florae.Repositories.Redis.TelemetryChunkRepository;
+import pl.Dayfit.Florae.Utils.GorillaChunk;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the raw readings of the last {@code florae.recent.retention-hours} per plant sensor in
+ * compressed {@link GorillaChunk}s.
+ * <p>
+ * Readings are appended to an open chunk held in memory. A chunk is sealed once it holds
+ * {@code florae.recent.chunk-points} points or spans {@code florae.recent.chunk-span-ms}. Every flush
+ * writes sealed chunks and the open chunks that grew since the previous flush to Redis through
+ * {@link TelemetryChunkRepository}, so every node sees the readings of all devices and at most one
+ * flush interval is lost in a crash. Sealed chunks stay readable locally until they are stored, and
+ * queries merge the stored, pending and open versions of a chunk, keeping the most complete one.
+ * <p>
+ * A reading sampled before the last recorded reading of its sensor, e.g. from a device whose clock
+ * stepped back, is dropped, so the chunks of a node never overlap. Chunks written by different nodes
+ * may still overlap when a device moves between them, so queries sort points that come out of order.
+ * <p>
+ * The store only answers for ranges starting after the cluster began recording, see {@link #covers}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecentTelemetryStore {
+    private final TelemetryChunkRepository telemetryChunkRepository;
+    private final Map<Integer, OpenChunks> openChunks = new ConcurrentHashMap<>();
+    private final Queue<TelemetryChunk> sealedChunks = new ConcurrentLinkedQueue<>();
+    private volatile Long recordingSince;
+
+    @Value("${florae.recent.retention-hours:72}")
+    private long retentionHours;
+
+    @Value("${florae.recent.chunk-points:720}")
+    private int chunkPoints;
+
+    @Value("${florae.recent.chunk-span-ms:7200000}")
+    private long chunkSpanMillis;
+
+    /**
+     * The open chunks of a plant by sensor, with the point count of each as last stored in Redis and
+     * the timestamp of the last recorded reading.
+     */
+    private static final class OpenChunks
+    {
+        private final GorillaChunk[] chunks = new GorillaChunk[SensorFrame.TYPES.length];
+        private final int[] storedCounts = new int[SensorFrame.TYPES.length];
+        private final long[] lastTimestamps = new long[SensorFrame.TYPES.length];
+
+        private OpenChunks()
+        {
+            Arrays.fill(lastTimestamps, Long.MIN_VALUE);
+        }
+    }
+
+    @PostConstruct
+    private void init()
+    {
+        resolveRecordingSince();
+    }
+
+    /**
+     * Appends every reading of a decoded frame to the open chunks of the plant.
+     *
+     * @param plantId the plant the FloraLink is linked to
+     * @param frame the decoded frame
+     */
+    public void record(Integer plantId, SensorFrame frame)
+    {
+        long sampledAt = frame.getSampledAt().toEpochMilli();
+        OpenChunks open = openChunks.computeIfAbsent(plantId, key -> new OpenChunks());
+
+        synchronized (open)
+        {
+            for (SensorDataType type : SensorFrame.TYPES)
+            {
+                if (!frame.has(type))
+                {
+                    continue;
+                }
+
+                if (sampledAt < open.lastTimestamps[type.ordinal()])
+                {
+                    log.debug("Dropping {} reading of plant {} sampled before its last reading", type, plantId);
+                    continue;
+                }
+
+                GorillaChunk chunk = open.chunks[type.ordinal()];
+
+                if (chunk != null && isFull(chunk, sampledAt))
+                {
+                    seal(plantId, type, open);
+                    chunk = null;
+                }
+
+                if (chunk == null)
+                {
+                    chunk = new GorillaChunk();
+                    open.chunks[type.ordinal()] = chunk;
+                }
+
+                chunk.append(sampledAt, frame.get(type));
+                open.lastTimestamps[type.ordinal()] = sampledAt;
+            }
+        }
+    }
+
+    /**
+     * @param from the range start
+     * @return whether the store holds every reading starting at {@code from}: the range is within the
+     * retention and the cluster was already recording at its start
+     */
+    public boolean covers(Instant from)
+    {
+        Long since = recordingSince == null ? resolveRecordingSince() : recordingSince;
+
+        return since != null && from.toEpochMilli() >= since && !from.isBefore(Instant.now().minus(Duration.ofHours(retentionHours)));
+    }
+
+    /**
+     * Reads the readings of a plant sensor within the range into the arrays, oldest first.
+     *
+     * @param plantId the plant identifier
+     * @param type the sensor type
+     * @param from inclusive range start
+     * @param to exclusive range end
+     * @param timestamps receives the timestamps, its length is the maximum number of points read
+     * @param values receives the values
+     * @return the number of points read, or {@code -1} if the range holds more points than fit
+     */
+    public int readPoints(int plantId, SensorDataType type, Instant from, Instant to, long[] timestamps, double[] values)
+    {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        NavigableMap<Long, byte[]> chunks = new TreeMap<>();
+
+        for (TelemetryChunk stored : telemetryChunkRepository.findChunks(plantId, type, fromMillis - chunkSpanMillis, toMillis))
+        {
+            addChunk(chunks, stored.firstTimestamp(), stored.data());
+        }
+
+        for (TelemetryChunk pending : sealedChunks)
+        {
+            if (pending.plantId() == plantId && pending.type() == type)
+            {
+                addChunk(chunks, pending.firstTimestamp(), pending.data());
+            }
+        }
+
+        OpenChunks open = openChunks.get(plantId);
+
+        if (open != null)
+        {
+            synchronized (open)
+            {
+                GorillaChunk chunk = open.chunks[type.ordinal()];
+
+                if (chunk != null)
+                {
+                    addChunk(chunks, chunk.getFirstTimestamp(), chunk.toByteArray());
+                }
+            }
+        }
+
+        int count = 0;
+        boolean sorted = true;
+
+        for (byte[] chunk : chunks.values())
+        {
+            GorillaChunk.Cursor cursor = GorillaChunk.cursor(chunk);
+
+            while (cursor.next())
+            {
+                if (cursor.getTimestamp() < fromMillis || cursor.getTimestamp() >= toMillis)
+                {
+                    continue;
+                }
+
+                if (count == timestamps.length)
+                {
+                    return -1;
+                }
+
+                timestamps[count] = cursor.getTimestamp();
+                values[count] = cursor.getValue();
+                sorted &= count == 0 || timestamps[count - 1] <= timestamps[count];
+                count++;
+            }
+        }
+
+        if (!sorted)
+        {
+            sortByTimestamp(timestamps, values, count);
+        }
+
+        return count;
+    }
+
+    @Scheduled(fixedDelayString = "${florae.recent.flush-interval-ms:5000}")
+    public void flush()
+    {
+        long now = System.currentTimeMillis();
+        List<TelemetryChunk> batch = new ArrayList<>();
+
+        openChunks.forEach((plantId, open) ->
+        {
+            synchronized (open)
+            {
+                for (SensorDataType type : SensorFrame.TYPES)
+                {
+                    GorillaChunk chunk = open.chunks[type.ordinal()];
+
+                    if (chunk == null)
+                    {
+                        continue;
+                    }
+
+                    if (isFull(chunk, now))
+                    {
+                        seal(plantId, type, open);
+                    }
+                    else if (chunk.getCount() != open.storedCounts[type.ordinal()])
+                    {
+                        batch.add(new TelemetryChunk(plantId, type, chunk.getFirstTimestamp(), chunk.toByteArray()));
+                        open.storedCounts[type.ordinal()] = chunk.getCount();
+                    }
+                }
+            }
+        });
+
+        List<TelemetryChunk> sealed = List.copyOf(sealedChunks);
+        batch.addAll(sealed);
+
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        try {
+            telemetryChunkRepository.saveAll(batch, Duration.ofHours(retentionHours).toMillis());
+            sealedChunks.removeAll(sealed);
+        } catch (RuntimeException exception) {
+            log.warn("Storing {} telemetry chunks failed, retrying on next flush: {}", batch.size(), exception.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown()
+    {
+        openChunks.forEach((plantId, open) ->
+        {
+            synchronized (open)
+            {
+                for (SensorDataType type : SensorFrame.TYPES)
+                {
+                    if (open.chunks[type.ordinal()] != null)
+                    {
+                        seal(plantId, type, open);
+                    }
+                }
+            }
+        });
+
+        flush();
+    }
+
+    private Long resolveRecordingSince()
+    {
+        try {
+            recordingSince = telemetryChunkRepository.markRecordingSince(System.currentTimeMillis());
+        } catch (RuntimeException exception) {
+            log.warn("Reading the start of recent telemetry recording failed: {}", exception.getMessage());
+        }
+
+        return recordingSince;
+    }
+
+    private boolean isFull(GorillaChunk chunk, long now)
+    {
+        return chunk.getCount() >= chunkPoints || now - chunk.getFirstTimestamp() >= chunkSpanMillis;
+    }
+
+    private void seal(int plantId, SensorDataType type, OpenChunks open)
+    {
+        GorillaChunk chunk = open.chunks[type.ordinal()];
+        sealedChunks.add(new TelemetryChunk(plantId, type, chunk.getFirstTimestamp(), chunk.toByteArray()));
+        open.chunks[type.ordinal()] = null;
+        open.storedCounts[type.ordinal()] = 0;
+    }
+
+    /**
+     * Sorts the points by timestamp in place. Points of overlapping chunks are mostly in order, which
+     * an insertion sort handles in close to linear time.
+     */
+    private static void sortByTimestamp(long[] timestamps, double[] values, int count)
+    {
+        for (int i = 1; i < count; i++)
+        {
+            long timestamp = timestamps[i];
+            double value = values[i];
+            int j = i - 1;
+
+            while (j >= 0 && timestamps[j] > timestamp)
+            {
+                timestamps[j + 1] = timestamps[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+
+            timestamps[j + 1] = timestamp;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * Adds a version of a chunk, keeping the one with the most points if the chunk is already known.
+     */
+    private static void addChunk(NavigableMap<Long, byte[]> chunks, long firstTimestamp, byte[] data)
+    {
+        chunks.merge(firstTimestamp, data, (known, other) -> GorillaChunk.cursor(other).getCount() > GorillaChunk.cursor(known).getCount() ? other : known);
+    }
+}
@@ -0,0 +1,156 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.DTOs.Sensors.SensorHistoryPointDTO;
+import pl.Dayfit.Florae.Enums.RollupResolution;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Repositories.JDBC.SensorRollupRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Answers historical range queries from the stored sensor rollups.
+ * <p>
+ * For every request the finest retained {@link RollupResolution} whose bucket count over the
+ * requested range does not exceed the requested maximum is selected, so long ranges are served
+ * from a few hundred day or hour buckets. Buckets are written to the response as they are read
+ * from the database instead of being collected in memory first. Ranges holding more day buckets
+ * than the requested maximum are rejected rather than truncated.
+ * <p>
+ * Ranges fully covered by the {@link RecentTelemetryStore} that hold no more than the requested
+ * number of readings are answered with the raw readings instead (resolution {@code RAW}). The
+ * readings are read once, stopping as soon as there are too many.
+ */
+@Service
+@RequiredArgsConstructor
+public class SensorHistoryQueryService {
+    public static final int MAX_POINTS_LIMIT = 5000;
+    private static final String RAW_RESOLUTION = "RAW";
+    private static final RollupResolution[] RESOLUTIONS = RollupResolution.values();
+
+    private final SensorRollupRepository sensorRollupRepository;
+    private final SensorRollupService sensorRollupService;
+    private final RecentTelemetryStore recentTelemetryStore;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param from inclusive range start
+     * @param to exclusive range end
+     * @param maxPoints maximum number of points to return
+     * @throws IllegalArgumentException if the range holds more day buckets than points may be returned
+     */
+    public void validateRange(Instant from, Instant to, int maxPoints)
+    {
+        if (bucketCount(from, to, RollupResolution.DAY) > maxPoints)
+        {
+            throw new IllegalArgumentException("Range spans more than " + maxPoints + " days, request a shorter range or more points");
+        }
+    }
+
+    /**
+     * @param from inclusive range start
+     * @param to exclusive range end
+     * @param maxPoints maximum number of points to return
+     * @return the finest retained resolution whose buckets over the range fit into {@code maxPoints}
+     * @throws IllegalArgumentException if not even day buckets fit, see {@link #validateRange}
+     */
+    public RollupResolution selectResolution(Instant from, Instant to, int maxPoints)
+    {
+        validateRange(from, to, maxPoints);
+
+        for (RollupResolution resolution : RESOLUTIONS)
+        {
+            if (sensorRollupService.isRetained(resolution, from) && bucketCount(from, to, resolution) <= maxPoints)
+            {
+                return resolution;
+            }
+        }
+
+        return RollupResolution.DAY;
+    }
+
+    /**
+     * Writes the history of one sensor of a plant as a JSON document to the output stream.
+     *
+     * @param plantId the plant identifier
+     * @param type the sensor type
+     * @param from inclusive range start
+     * @param to exclusive range end
+     * @param maxPoints maximum number of points to return
+     * @param outputStream the response body
+     * @throws IOException if writing to the output stream fails
+     */
+    public void streamHistory(Integer plantId, SensorDataType type, Instant from, Instant to, int maxPoints, OutputStream outputStream) throws IOException
+    {
+        long[] timestamps = null;
+        double[] values = null;
+        int rawPoints = -1;
+
+        if (recentTelemetryStore.covers(from))
+        {
+            timestamps = new long[maxPoints];
+            values = new double[maxPoints];
+            rawPoints = recentTelemetryStore.readPoints(plantId, type, from, to, timestamps, values);
+        }
+
+        boolean raw = rawPoints >= 0;
+        RollupResolution resolution = raw ? null : selectResolution(from, to, maxPoints);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream))
+        {
+            generator.writeStartObject();
+            generator.writeNumberField("plantId", plantId);
+            generator.writeStringField("type", type.toString());
+            generator.writeStringField("resolution", raw ? RAW_RESOLUTION : resolution.name());
+            generator.writeArrayFieldStart("points");
+
+            try {
+                if (raw)
+                {
+                    SensorHistoryPointDTO point = new SensorHistoryPointDTO();
+                    point.setCount(1);
+
+                    for (int i = 0; i < rawPoints; i++)
+                    {
+                        point.setTimestamp(Instant.ofEpochMilli(timestamps[i]));
+                        point.setMinValue(values[i]);
+                        point.setMaxValue(values[i]);
+                        point.setAverageValue(values[i]);
+                        point.setLastValue(values[i]);
+                        writePoint(generator, point);
+                    }
+                }
+                else
+                {
+                    sensorRollupRepository.findRange(resolution, plantId, type, from, to, maxPoints, point -> writePoint(generator, point));
+                }
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static long bucketCount(Instant from, Instant to, RollupResolution resolution)
+    {
+        return Math.ceilDiv(Duration.between(from, to).toMillis(), resolution.getBucketSize().toMillis());
+    }
+
+    private static void writePoint(JsonGenerator generator, SensorHistoryPointDTO point)
+    {
+        try {
+            generator.writeObject(point);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
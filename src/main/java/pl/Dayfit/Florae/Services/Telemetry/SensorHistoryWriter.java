@@ -0,0 +1,338 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrame;
+import pl.Dayfit.Florae.POJOs.SensorReading;
+import pl.Dayfit.Florae.Repositories.JDBC.SensorHistoryRepository;
+import pl.Dayfit.Florae.Utils.IngestJournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists raw sensor readings into the partitioned PostgreSQL history.
+ * <p>
+ * Readings are handed over through a bounded queue and written by a dedicated thread in
+ * multi-row batches, so the WebSocket thread never waits for the database. When the queue is
+ * full the producer waits up to {@code florae.history.offer-timeout-ms} for space (backpressure),
+ * after which the reading is dropped and counted. Each batch is inserted and folded into the rollups
+ * maintained by {@link SensorRollupService} in one transaction, so a failed batch leaves no trace and
+ * can be journaled as a whole. Monthly partitions are created ahead of time
+ * and partitions older than {@code florae.history.retention-months} are dropped.
+ * <p>
+ * If a batch cannot be written, the database is considered unavailable: that batch and all following
+ * ones are appended to a local {@link IngestJournal}. The writer thread replays the journal in order,
+ * applying each batch together with its journal position in one transaction, so a batch replayed
+ * again after a crash is recognized and skipped.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SensorHistoryWriter {
+    private static final int REPLAY_BATCH = 100;
+    private static final long REPLAY_BACKOFF_MILLIS = 5_000;
+    private static final int READING_BYTES = 2 * Integer.BYTES + 1 + Double.BYTES + Long.BYTES;
+
+    private final SensorHistoryRepository sensorHistoryRepository;
+    private final SensorRollupService sensorRollupService;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicLong droppedReadings = new AtomicLong();
+    private IngestJournal journal;
+    private boolean degraded;
+    private long nextReplayAttempt;
+    private BlockingQueue<SensorReading> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @Value("${florae.history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${florae.history.queue-capacity:50000}")
+    private int queueCapacity;
+
+    @Value("${florae.history.batch-size:2000}")
+    private int batchSize;
+
+    @Value("${florae.history.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+
+    @Value("${florae.history.offer-timeout-ms:10}")
+    private long offerTimeoutMillis;
+
+    @Value("${florae.history.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${florae.journal.enabled:true}")
+    private boolean journalEnabled;
+
+    @Value("${florae.journal.directory:${java.io.tmpdir}/florae-journal}")
+    private Path journalDirectory;
+
+    @Value("${florae.journal.segment-size:16777216}")
+    private int journalSegmentSize;
+
+    @PostConstruct
+    private void init() throws IOException
+    {
+        if (!enabled)
+        {
+            log.info("Sensor history is disabled");
+            return;
+        }
+
+        sensorHistoryRepository.createSchema();
+        maintainPartitions();
+
+        if (journalEnabled)
+        {
+            journal = new IngestJournal(journalDirectory.resolve("sensor-history"), journalSegmentSize);
+            degraded = journal.hasPending();
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = Thread.ofPlatform().name("sensor-history-writer").daemon().start(this::writeLoop);
+    }
+
+    /**
+     * Queues every reading of a decoded frame for persistence.
+     *
+     * @param plantId the plant the FloraLink is linked to
+     * @param floraLinkId the FloraLink that sent the frame
+     * @param frame the decoded frame
+     */
+    public void record(Integer plantId, Integer floraLinkId, SensorFrame frame)
+    {
+        if (!running)
+        {
+            return;
+        }
+
+        long sampledAt = frame.getSampledAt().toEpochMilli();
+
+        for (SensorDataType type : SensorFrame.TYPES)
+        {
+            if (frame.has(type))
+            {
+                offer(new SensorReading(plantId, floraLinkId, type, frame.get(type), sampledAt));
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 0 0 * * *")
+    public void maintainPartitions()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        sensorHistoryRepository.createPartition(current);
+        sensorHistoryRepository.createPartition(current.plusMonths(1));
+
+        int dropped = sensorHistoryRepository.dropPartitionsBefore(current.minusMonths(retentionMonths));
+
+        if (dropped > 0)
+        {
+            log.info("Dropped {} sensor history partitions older than {} months", dropped, retentionMonths);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        if (writerThread == null)
+        {
+            return;
+        }
+
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+
+    private void offer(SensorReading reading)
+    {
+        try {
+            if (queue.offer(reading, offerTimeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                return;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        droppedReadings.incrementAndGet();
+    }
+
+    private void write(List<SensorReading> batch)
+    {
+        if (degraded && !replayJournal())
+        {
+            appendToJournal(batch);
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+            {
+                sensorHistoryRepository.insertAll(batch);
+                sensorRollupService.apply(batch);
+            });
+        } catch (RuntimeException exception) {
+            if (journal == null)
+            {
+                log.warn("Writing {} sensor readings to history failed: {}", batch.size(), exception.getMessage());
+                return;
+            }
+
+            log.warn("Writing {} sensor readings to history failed, journaling until the database recovers: {}", batch.size(), exception.getMessage());
+            degraded = true;
+            appendToJournal(batch);
+        }
+    }
+
+    /**
+     * Replays journaled batches in order.
+     *
+     * @return whether the journal was drained
+     */
+    private boolean replayJournal()
+    {
+        if (System.currentTimeMillis() < nextReplayAttempt)
+        {
+            return false;
+        }
+
+        try {
+            long applied = sensorHistoryRepository.findCheckpoint(journal.getId());
+
+            while (journal.replay(REPLAY_BATCH, (position, record) -> replayBatch(position, record, applied)) > 0)
+            {
+                log.debug("Replayed journaled sensor readings into history");
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.warn("Replaying sensor history journal failed: {}", exception.getMessage());
+            nextReplayAttempt = System.currentTimeMillis() + REPLAY_BACKOFF_MILLIS;
+            return false;
+        }
+
+        degraded = journal.hasPending();
+        nextReplayAttempt = degraded ? System.currentTimeMillis() + REPLAY_BACKOFF_MILLIS : 0;
+
+        if (!degraded)
+        {
+            log.info("Sensor history journal drained, writing directly again");
+        }
+
+        return !degraded;
+    }
+
+    private boolean replayBatch(long position, ByteBuffer record, long applied)
+    {
+        if (position <= applied)
+        {
+            return true;
+        }
+
+        List<SensorReading> batch = new ArrayList<>(record.remaining() / READING_BYTES);
+
+        while (record.hasRemaining())
+        {
+            batch.add(new SensorReading(record.getInt(), record.getInt(), SensorDataType.fromId(record.get() & 0xFF), record.getDouble(), record.getLong()));
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+            {
+                sensorHistoryRepository.insertAll(batch);
+                sensorRollupService.apply(batch);
+                sensorHistoryRepository.saveCheckpoint(journal.getId(), position);
+            });
+            return true;
+        } catch (RuntimeException exception) {
+            log.warn("Replaying {} journaled sensor readings failed: {}", batch.size(), exception.getMessage());
+            return false;
+        }
+    }
+
+    private void appendToJournal(List<SensorReading> batch)
+    {
+        ByteBuffer record = ByteBuffer.allocate(batch.size() * READING_BYTES);
+
+        for (SensorReading reading : batch)
+        {
+            record.putInt(reading.plantId())
+                    .putInt(reading.floraLinkId())
+                    .put((byte) reading.type().getId())
+                    .putDouble(reading.value())
+                    .putLong(reading.timestamp());
+        }
+
+        try {
+            journal.append(record.flip());
+        } catch (IOException | RuntimeException exception) {
+            log.error("Journaling {} sensor readings failed, dropping them: {}", batch.size(), exception.getMessage());
+        }
+    }
+
+    private void writeLoop()
+    {
+        List<SensorReading> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty())
+        {
+            try {
+                SensorReading first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+                if (first == null)
+                {
+                    if (degraded)
+                    {
+                        replayJournal();
+                    }
+
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+
+            long dropped = droppedReadings.getAndSet(0);
+
+            if (dropped > 0)
+            {
+                log.warn("Sensor history queue was full, dropped {} readings", dropped);
+            }
+        }
+    }
+}
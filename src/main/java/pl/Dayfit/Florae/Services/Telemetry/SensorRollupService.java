@@ -0,0 +1,113 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.Enums.RollupResolution;
+import pl.Dayfit.Florae.POJOs.SensorReading;
+import pl.Dayfit.Florae.POJOs.SensorRollup;
+import pl.Dayfit.Florae.Repositories.JDBC.SensorRollupRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains minute, hour and day rollups per plant and {@link pl.Dayfit.Florae.Enums.SensorDataType}.
+ * <p>
+ * Every batch written to the raw history is folded into per-bucket aggregates in memory and then
+ * merged into the stored rollups, so charts over long ranges read a few hundred pre-aggregated
+ * points instead of scanning raw readings. Fine-grained buckets are pruned after their retention period.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SensorRollupService {
+    private static final RollupResolution[] RESOLUTIONS = RollupResolution.values();
+    private static final Comparator<SensorRollup> LOCK_ORDER = Comparator
+            .comparing((SensorRollup rollup) -> rollup.getKey().resolution())
+            .thenComparingInt(rollup -> rollup.getKey().plantId())
+            .thenComparing(rollup -> rollup.getKey().type())
+            .thenComparingLong(rollup -> rollup.getKey().bucketStart());
+
+    private final SensorRollupRepository sensorRollupRepository;
+
+    @Value("${florae.history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${florae.rollups.minute-retention-days:7}")
+    private int minuteRetentionDays;
+
+    @Value("${florae.rollups.hour-retention-days:400}")
+    private int hourRetentionDays;
+
+    @PostConstruct
+    private void init()
+    {
+        if (enabled)
+        {
+            sensorRollupRepository.createSchema();
+        }
+    }
+
+    /**
+     * Folds a batch of raw readings into all rollup resolutions.
+     * @param readings the readings that were just persisted
+     */
+    public void apply(List<SensorReading> readings)
+    {
+        Map<SensorRollup.Key, SensorRollup> rollups = new HashMap<>();
+
+        for (SensorReading reading : readings)
+        {
+            for (RollupResolution resolution : RESOLUTIONS)
+            {
+                SensorRollup.Key key = new SensorRollup.Key(resolution, reading.plantId(), reading.type(), resolution.bucketStart(reading.timestamp()));
+                rollups.computeIfAbsent(key, SensorRollup::new).add(reading.value(), reading.timestamp());
+            }
+        }
+
+        List<SensorRollup> ordered = new ArrayList<>(rollups.values());
+        ordered.sort(LOCK_ORDER);
+
+        sensorRollupRepository.mergeAll(ordered);
+    }
+
+    /**
+     * @param resolution the rollup resolution
+     * @param from the oldest instant a query needs
+     * @return whether buckets of the resolution are still retained at that instant
+     */
+    public boolean isRetained(RollupResolution resolution, Instant from)
+    {
+        return switch (resolution)
+        {
+            case MINUTE -> from.isAfter(Instant.now().minus(Duration.ofDays(minuteRetentionDays)));
+            case HOUR -> from.isAfter(Instant.now().minus(Duration.ofDays(hourRetentionDays)));
+            case DAY -> true;
+        };
+    }
+
+    @Scheduled(cron = "0 30 0 * * *")
+    public void pruneRollups()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+
+        Instant now = Instant.now();
+
+        int minutes = sensorRollupRepository.deleteOlderThan(RollupResolution.MINUTE, now.minus(Duration.ofDays(minuteRetentionDays)));
+        int hours = sensorRollupRepository.deleteOlderThan(RollupResolution.HOUR, now.minus(Duration.ofDays(hourRetentionDays)));
+
+        log.info("Pruned {} minute and {} hour sensor rollups", minutes, hours);
+    }
+}
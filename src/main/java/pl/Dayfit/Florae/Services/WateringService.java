@@ -0,0 +1,118 @@
+package pl.Dayfit.Florae.Services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.Dayfit.Florae.Repositories.JPA.FloraLinkRepository;
+import pl.Dayfit.Florae.Repositories.Redis.WateringLeaseRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a FloraLink may be watered and keeps its watering date.
+ * <p>
+ * A watering is only allowed while no other watering of the device happened within
+ * {@code florae.watering.interval-ms}, which is enforced by a {@link WateringLeaseRepository lease}
+ * in Redis, so the decision is one round trip and consistent across nodes. The watering dates of
+ * granted waterings are collected and written to the database every
+ * {@code florae.watering.flush-interval-ms}, evicting the cached FloraLinks and the cached FloraLink
+ * lists of their owners.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WateringService {
+    private final WateringLeaseRepository wateringLeaseRepository;
+    private final FloraLinkRepository floraLinkRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+    private final Map<Integer, Instant> pendingWateringDates = new ConcurrentHashMap<>();
+
+    @Value("${florae.watering.interval-ms:1800000}")
+    private long intervalMillis;
+
+    /**
+     * Takes the watering lease of a FloraLink. Must succeed before a watering command is sent.
+     *
+     * @param floraLinkId the FloraLink identifier
+     * @return whether the device may be watered now
+     */
+    public boolean tryStartWatering(int floraLinkId)
+    {
+        Instant now = Instant.now();
+
+        if (!wateringLeaseRepository.tryAcquire(floraLinkId, now, Duration.ofMillis(intervalMillis)))
+        {
+            return false;
+        }
+
+        pendingWateringDates.merge(floraLinkId, now, (previous, current) -> current.isAfter(previous) ? current : previous);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${florae.watering.flush-interval-ms:5000}")
+    public void flush()
+    {
+        if (pendingWateringDates.isEmpty())
+        {
+            return;
+        }
+
+        Map<Integer, Instant> batch = new HashMap<>();
+
+        for (Integer floraLinkId : pendingWateringDates.keySet())
+        {
+            Instant wateredAt = pendingWateringDates.remove(floraLinkId);
+
+            if (wateredAt != null)
+            {
+                batch.put(floraLinkId, wateredAt);
+            }
+        }
+
+        List<Integer> ownerIds;
+
+        try {
+            ownerIds = transactionTemplate.execute(status ->
+            {
+                batch.forEach(floraLinkRepository::updateWateringDate);
+                return floraLinkRepository.findOwnerIdsByFloraLinkIds(batch.keySet());
+            });
+        } catch (RuntimeException exception) {
+            log.warn("Storing watering dates of {} FloraLinks failed, retrying on next flush: {}", batch.size(), exception.getMessage());
+            batch.forEach((floraLinkId, wateredAt) -> pendingWateringDates.merge(floraLinkId, wateredAt, (current, failed) -> current));
+            return;
+        }
+
+        evict("flora-link", batch.keySet());
+        evict("flora-links", ownerIds == null ? List.of() : ownerIds);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown()
+    {
+        flush();
+    }
+
+    private void evict(String cacheName, Collection<Integer> keys)
+    {
+        Cache cache = cacheManager.getCache(cacheName);
+
+        if (cache != null)
+        {
+            keys.forEach(cache::evict);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorResponseDataDTO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the sensor readings pushed to the dashboards of users.
+ * <p>
+ * Readings are collected per user, keeping only the latest value of every sensor of every FloraLink,
+ * and sent every {@code florae.fanout.coalesce-interval-ms} as one frame holding a
+ * {@link CurrentSensorResponseDataDTO} per FloraLink that reported since the previous one. A user with
+ * many devices thus gets a bounded number of frames, each serialized once, no matter how often the
+ * devices report. Readings of users without a dashboard open on any node are not buffered at all.
+ * <p>
+ * Flushing runs on its own thread, so its presence lookups never delay the shared scheduler.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardCoalescer {
+    private final FanoutPublisher fanoutPublisher;
+    private final PresenceRegistry presenceRegistry;
+    private final Map<String, Map<Integer, Map<String, CurrentSensorDataDTO>>> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Value("${florae.fanout.coalesce-interval-ms:250}")
+    private long coalesceIntervalMillis;
+
+    @PostConstruct
+    void start()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("dashboard-coalescer").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::flush, coalesceIntervalMillis, coalesceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop()
+    {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @param username the user to send the readings to
+     * @param floraLinkId the FloraLink that reported them
+     * @param sensorData the readings, replacing pending readings of the same sensors
+     */
+    public void offer(String username, int floraLinkId, List<CurrentSensorDataDTO> sensorData)
+    {
+        if (!hasDashboard(username))
+        {
+            return;
+        }
+
+        pending.compute(username, (key, floraLinks) ->
+        {
+            Map<Integer, Map<String, CurrentSensorDataDTO>> updated = floraLinks == null ? new HashMap<>() : floraLinks;
+            Map<String, CurrentSensorDataDTO> sensors = updated.computeIfAbsent(floraLinkId, id -> new LinkedHashMap<>());
+
+            for (CurrentSensorDataDTO reading : sensorData)
+            {
+                sensors.put(reading.getType(), reading);
+            }
+
+            return updated;
+        });
+    }
+
+    public void flush()
+    {
+        for (String username : pending.keySet())
+        {
+            Map<Integer, Map<String, CurrentSensorDataDTO>> floraLinks = pending.remove(username);
+
+            if (floraLinks == null)
+            {
+                continue;
+            }
+
+            List<CurrentSensorResponseDataDTO> frame = new ArrayList<>(floraLinks.size());
+            floraLinks.forEach((floraLinkId, sensors) -> frame.add(new CurrentSensorResponseDataDTO(floraLinkId, List.copyOf(sensors.values()))));
+
+            try {
+                fanoutPublisher.publishToUser(username, frame);
+            } catch (RuntimeException exception) {
+                log.warn("Sending readings of {} FloraLinks to user {} failed: {}", frame.size(), username, exception.getMessage());
+            }
+        }
+    }
+
+    private boolean hasDashboard(String username)
+    {
+        try {
+            return !presenceRegistry.findUserNodes(username).isEmpty();
+        } catch (RuntimeException exception) {
+            log.debug("Looking up presence of user {} failed, buffering readings: {}", username, exception.getMessage());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.DTOs.FloraLinkResponseDTO;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorResponseDataDTO;
+import pl.Dayfit.Florae.Entities.FloraeUser;
+import pl.Dayfit.Florae.Services.Auth.JWT.FloraeUserCacheService;
+import pl.Dayfit.Florae.Services.FloraLinkCacheService;
+import pl.Dayfit.Florae.Services.Telemetry.LatestReadingsStore;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * Sends a newly connected dashboard the latest readings of every FloraLink its user owns, in the same
+ * batched frame format as the updates that follow, so it does not wait for the next device report.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardSnapshotService {
+    private final FloraeUserCacheService floraeUserCacheService;
+    private final FloraLinkCacheService floraLinkCacheService;
+    private final LatestReadingsStore latestReadingsStore;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Queues the snapshot on the outbox of a registered user session. Failures are logged, the session
+     * then only receives the updates.
+     *
+     * @param session the user session
+     */
+    public void sendSnapshot(WebSocketSession session)
+    {
+        Principal principal = session.getPrincipal();
+
+        if (principal == null || !(session.getAttributes().get(SessionService.OUTBOX_ATTRIBUTE) instanceof SessionOutbox outbox))
+        {
+            return;
+        }
+
+        try {
+            FloraeUser user = floraeUserCacheService.getFloraeUser(principal.getName());
+
+            if (user == null)
+            {
+                return;
+            }
+
+            List<Integer> floraLinkIds = floraLinkCacheService.getOwnedFloraLinks(user.getId()).stream()
+                    .map(FloraLinkResponseDTO::getFloraLinkId)
+                    .toList();
+            List<CurrentSensorResponseDataDTO> snapshot = latestReadingsStore.snapshot(floraLinkIds);
+
+            if (!snapshot.isEmpty())
+            {
+                outbox.send(new TextMessage(objectMapper.writeValueAsBytes(snapshot)));
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.warn("Sending snapshot to session {} failed: {}", session.getId(), exception.getMessage());
+        }
+    }
+}
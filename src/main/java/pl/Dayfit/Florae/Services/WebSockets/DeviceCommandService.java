@@ -0,0 +1,280 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.DTOs.Sensors.Commands.Command;
+import pl.Dayfit.Florae.DTOs.Sensors.Commands.CommandMessage;
+import pl.Dayfit.Florae.Enums.CommandType;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
+import pl.Dayfit.Florae.Repositories.Redis.CommandStreamRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers commands to FloraLinks at least once.
+ * <p>
+ * A command is only appended to the command stream of its device ({@link CommandStreamRepository}).
+ * Every node consumes the streams of the FloraLinks connected to it on its own thread, with one
+ * blocking {@code XREAD} for all of them, and queues each command on the local sessions of the device.
+ * The device answers with {@code {"ack": "<command id>"}}, which removes the command from the stream
+ * and records the round trip as {@code florae.commands.round-trip}.
+ * <p>
+ * The stream of a device is read from its oldest command when it connects, after its session is
+ * registered, and again every {@code florae.commands.redelivery-ms}, so a command that is not
+ * acknowledged is sent again until it is; the device skips the ids it has already handled. Commands
+ * older than {@code florae.commands.max-age-ms} are not sent anymore.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceCommandService {
+    private static final String TYPE_FIELD = "type";
+    private static final String VALUE_FIELD = "value";
+
+    private static final int READ_COUNT = 16;
+
+    private final CommandStreamRepository commandStreamRepository;
+    private final ChannelMessagingHandler channelMessagingHandler;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, Integer> localSessions = new ConcurrentHashMap<>();
+    private final Map<Integer, String> cursors = new ConcurrentHashMap<>();
+    private ExecutorService consumer;
+    private volatile Thread consumerThread;
+
+    @Value("${florae.commands.max-age-ms:600000}")
+    private long maxAgeMillis;
+
+    @Value("${florae.commands.block-ms:2000}")
+    private long blockMillis;
+
+    @Value("${florae.commands.redelivery-ms:30000}")
+    private long redeliveryMillis;
+
+    @PostConstruct
+    void start()
+    {
+        consumer = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("device-commands").daemon().factory());
+        consumer.execute(this::consume);
+    }
+
+    @PreDestroy
+    void stop()
+    {
+        consumer.shutdownNow();
+    }
+
+    /**
+     * Queues a command for a device; the node it is connected to sends it.
+     *
+     * @param floraLinkId the target FloraLink
+     * @param command the command, its id is assigned here
+     */
+    public void send(Integer floraLinkId, Command command)
+    {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(TYPE_FIELD, command.getType().name());
+
+        if (command instanceof CommandMessage message)
+        {
+            fields.put(VALUE_FIELD, Double.toString(message.getValue()));
+        }
+
+        command.setId(commandStreamRepository.append(floraLinkId, fields, Duration.ofMillis(maxAgeMillis)));
+    }
+
+    /**
+     * Handles an acknowledgement sent by a device.
+     *
+     * @param floraLinkId the FloraLink that sent it
+     * @param payload the raw {@code {"ack": "<command id>"}} message
+     * @throws IOException if the payload is not valid JSON
+     */
+    public void acknowledge(Integer floraLinkId, String payload) throws IOException
+    {
+        JsonNode commandId = objectMapper.readTree(payload).get("ack");
+
+        if (commandId == null || !commandId.isTextual())
+        {
+            log.debug("FloraLink {} sent a message without command id: {}", floraLinkId, payload);
+            return;
+        }
+
+        Map<Object, Object> fields;
+
+        try {
+            fields = commandStreamRepository.acknowledge(floraLinkId, commandId.asText());
+        } catch (IllegalArgumentException exception) {
+            log.debug("FloraLink {} acknowledged malformed command id {}", floraLinkId, commandId.asText());
+            return;
+        }
+
+        if (fields == null)
+        {
+            log.debug("FloraLink {} acknowledged unknown command {}", floraLinkId, commandId.asText());
+            return;
+        }
+
+        long roundTripMillis = System.currentTimeMillis() - RecordId.of(commandId.asText()).getTimestamp();
+        Timer.builder("florae.commands.round-trip")
+                .tag(TYPE_FIELD, String.valueOf(fields.get(TYPE_FIELD)))
+                .register(meterRegistry)
+                .record(Duration.ofMillis(roundTripMillis));
+
+        log.debug("FloraLink {} acknowledged command {} after {} ms", floraLinkId, commandId.asText(), roundTripMillis);
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void register(WebSocketConnectionEstablishedEvent event)
+    {
+        if (event.connectionType() == ConnectionType.FLORALINK && event.session().getAttributes().get("id") instanceof Integer floraLinkId)
+        {
+            localSessions.merge(floraLinkId, 1, Integer::sum);
+            cursors.put(floraLinkId, CommandStreamRepository.oldestId(Duration.ofMillis(maxAgeMillis)));
+            wakeUp();
+        }
+    }
+
+    @EventListener
+    public void unregister(WebSocketConnectionClosedEvent event)
+    {
+        if (event.connectionType() == ConnectionType.FLORALINK && event.session().getAttributes().get("id") instanceof Integer floraLinkId)
+        {
+            if (localSessions.computeIfPresent(floraLinkId, (id, sessions) -> sessions > 1 ? sessions - 1 : null) == null)
+            {
+                cursors.remove(floraLinkId);
+            }
+        }
+    }
+
+    /**
+     * Sends the commands appended to the streams of the local FloraLinks since the last call, waiting
+     * up to {@code florae.commands.block-ms} for one to arrive.
+     *
+     * @return the number of commands sent
+     */
+    int poll()
+    {
+        Map<Integer, String> read = Map.copyOf(cursors);
+
+        if (read.isEmpty())
+        {
+            return 0;
+        }
+
+        Map<Integer, List<MapRecord<String, Object, Object>>> commands = commandStreamRepository.read(read, READ_COUNT, Duration.ofMillis(blockMillis));
+        int sent = 0;
+
+        for (Map.Entry<Integer, List<MapRecord<String, Object, Object>>> entry : commands.entrySet())
+        {
+            Integer floraLinkId = entry.getKey();
+
+            for (MapRecord<String, Object, Object> record : entry.getValue())
+            {
+                deliver(floraLinkId, record);
+                sent++;
+            }
+
+            // a reconnect or redelivery moved the cursor back meanwhile, keep that
+            cursors.replace(floraLinkId, read.get(floraLinkId), entry.getValue().getLast().getId().getValue());
+        }
+
+        return sent;
+    }
+
+    /**
+     * Moves the cursor of every local FloraLink back to its oldest command, so the commands that were
+     * not acknowledged yet are sent again.
+     */
+    void rewind()
+    {
+        String oldest = CommandStreamRepository.oldestId(Duration.ofMillis(maxAgeMillis));
+        cursors.replaceAll((floraLinkId, cursor) -> oldest);
+    }
+
+    private void consume()
+    {
+        consumerThread = Thread.currentThread();
+        long rewoundAt = System.currentTimeMillis();
+
+        while (!Thread.currentThread().isInterrupted())
+        {
+            if (cursors.isEmpty())
+            {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(blockMillis));
+                continue;
+            }
+
+            if (System.currentTimeMillis() - rewoundAt >= redeliveryMillis)
+            {
+                rewind();
+                rewoundAt = System.currentTimeMillis();
+            }
+
+            try {
+                poll();
+            } catch (RuntimeException exception) {
+                if (Thread.currentThread().isInterrupted())
+                {
+                    return;
+                }
+
+                log.warn("Reading commands of {} FloraLinks failed: {}", cursors.size(), exception.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(blockMillis));
+            }
+        }
+    }
+
+    private void wakeUp()
+    {
+        Thread thread = consumerThread;
+
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void deliver(Integer floraLinkId, MapRecord<String, Object, Object> record)
+    {
+        Map<Object, Object> fields = record.getValue();
+        CommandType type = CommandType.valueOf(String.valueOf(fields.get(TYPE_FIELD)));
+        Object value = fields.get(VALUE_FIELD);
+
+        Command command = value == null ? new Command(type) : new CommandMessage(type, Double.parseDouble(value.toString()));
+        command.setId(record.getId().getValue());
+
+        try {
+            channelMessagingHandler.deliver(ChannelMessagingHandler.FLORALINK_CHANNEL_PREFIX + floraLinkId, objectMapper.writeValueAsBytes(command));
+        } catch (JsonProcessingException exception) {
+            log.warn("Command {} of FloraLink {} cannot be serialized: {}", command.getId(), floraLinkId, exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.Dayfit.Florae.Entities.Plant;
+import pl.Dayfit.Florae.Events.ApiKeyRevokedEvent;
+import pl.Dayfit.Florae.Events.PlantUpdatedEvent;
+import pl.Dayfit.Florae.POJOs.DeviceContext;
+import pl.Dayfit.Florae.Services.PlantCacheService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tracks the {@link DeviceContext} of every connected FloraLink on this node.
+ * <p>
+ * A context is resolved once in the handshake and stored in a {@link Holder} session attribute, so
+ * handling a frame needs no cache lookups. When a plant is saved or deleted, its id is published on the
+ * {@code plant-updates} channel, which every node subscribes to, and the node holding its device gives
+ * the holder a freshly resolved context, or marks it as revoked if the plant is gone. When the API key
+ * is revoked the holder is marked as revoked as well and the handler closes the session on the next frame.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceContextRegistry implements MessageListener {
+    public static final String CONTEXT_ATTRIBUTE = "context";
+    public static final String PLANT_UPDATES_CHANNEL = "plant-updates";
+
+    private final PlantCacheService plantCacheService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<Integer, Holder> holders = new ConcurrentHashMap<>();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("device-context-refresh").factory());
+
+    public static class Holder
+    {
+        private volatile @Getter DeviceContext context;
+        private volatile @Getter boolean revoked;
+
+        /**
+         * When the session last received a frame, in epoch milliseconds; the handshake counts as one
+         */
+        private volatile @Getter long lastFrameAt = System.currentTimeMillis();
+
+        public Holder(DeviceContext context)
+        {
+            this.context = context;
+        }
+
+        public void markFrame(long receivedAt)
+        {
+            lastFrameAt = receivedAt;
+        }
+    }
+
+    public void register(Holder holder)
+    {
+        if (holder == null)
+        {
+            return;
+        }
+
+        holders.put(holder.getContext().plantId(), holder);
+    }
+
+    public void unregister(Holder holder)
+    {
+        if (holder == null)
+        {
+            return;
+        }
+
+        holders.remove(holder.getContext().plantId(), holder);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handlePlantUpdate(PlantUpdatedEvent event)
+    {
+        try {
+            stringRedisTemplate.convertAndSend(PLANT_UPDATES_CHANNEL, event.plantId().toString());
+        } catch (RuntimeException exception) {
+            log.warn("Publishing update of plant {} failed, refreshing local devices only: {}", event.plantId(), exception.getMessage());
+            refresh(event.plantId());
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern)
+    {
+        int plantId;
+
+        try {
+            plantId = Integer.parseInt(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException exception) {
+            log.warn("Discarding malformed plant update: {}", exception.getMessage());
+            return;
+        }
+
+        if (holders.containsKey(plantId))
+        {
+            // the listener runs on the Redis connection thread, which must not wait for the plant lookup
+            refresher.execute(() -> refresh(plantId));
+        }
+    }
+
+    @PreDestroy
+    void shutdown()
+    {
+        refresher.shutdownNow();
+    }
+
+    private void refresh(int plantId)
+    {
+        Holder holder = holders.get(plantId);
+
+        if (holder == null)
+        {
+            return;
+        }
+
+        Plant plant;
+
+        try {
+            plant = plantCacheService.getPlantById(plantId);
+        } catch (RuntimeException exception) {
+            log.warn("Refreshing device context of plant {} failed: {}", plantId, exception.getMessage());
+            return;
+        }
+
+        if (plant == null)
+        {
+            holder.revoked = true;
+            return;
+        }
+
+        holder.context = holder.getContext().refresh(plant);
+        log.debug("Refreshed device context of plant {}", plantId);
+    }
+
+    @TransactionalEventListener
+    public void handleApiKeyRevocation(ApiKeyRevokedEvent event)
+    {
+        Holder holder = holders.get(event.apiKey().getLinkedPlant().getId());
+
+        if (holder != null)
+        {
+            holder.revoked = true;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
+import pl.Dayfit.Florae.POJOs.NodeEnvelope;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Publishes messages for WebSocket clients of the {@code user.*} channels. Commands for FloraLinks go
+ * through {@link DeviceCommandService} instead.
+ * <p>
+ * A message is serialized to JSON exactly once. The nodes holding sessions of the channel are looked
+ * up in the {@link PresenceRegistry}; the message is handed to {@link ChannelMessagingHandler} directly
+ * if this node is one of them, and published in a {@link NodeEnvelope} on the {@code node.{id}}
+ * channel of every other one, so it crosses the network only to nodes that deliver it. Messages for
+ * channels with no session anywhere are dropped.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FanoutPublisher {
+    public static final String NODE_CHANNEL_PREFIX = "node.";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final PresenceRegistry presenceRegistry;
+    private final NodeIdentity nodeIdentity;
+    private final ChannelMessagingHandler channelMessagingHandler;
+
+    public void publishToUser(String username, Object message)
+    {
+        Set<String> nodes = presenceRegistry.findUserNodes(username);
+
+        if (!nodes.isEmpty())
+        {
+            publish(ChannelMessagingHandler.USER_CHANNEL_PREFIX + username, message, nodes);
+        }
+    }
+
+    private void publish(String channel, Object message, Set<String> nodes)
+    {
+        byte[] payload;
+
+        try {
+            payload = objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException("Message for channel " + channel + " cannot be serialized", exception);
+        }
+
+        byte[] envelope = null;
+
+        for (String node : nodes)
+        {
+            if (node.equals(nodeIdentity.getId()))
+            {
+                channelMessagingHandler.deliver(channel, payload);
+                continue;
+            }
+
+            if (envelope == null)
+            {
+                envelope = new NodeEnvelope(channel, payload).toByteArray();
+            }
+
+            byte[] nodeChannel = (NODE_CHANNEL_PREFIX + node).getBytes(StandardCharsets.UTF_8);
+            byte[] body = envelope;
+            stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(nodeChannel, body));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.Enums.MailboxOverflowPolicy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves processing of incoming WebSocket frames off the container threads.
+ * <p>
+ * Every session gets a bounded FIFO {@link Mailbox} of {@code florae.ingest.mailbox-capacity} frames.
+ * Whenever frames are queued, a single virtual thread drains the mailbox, so frames of one device are
+ * processed in order and never concurrently, while a slow Redis or database call only parks a cheap
+ * virtual thread. A frame arriving at a full mailbox is handled according to
+ * {@code florae.ingest.overflow-policy}, and counted in {@code florae.ingest.dropped} tagged with the
+ * {@code policy}.
+ */
+@Slf4j
+@Service
+public class IngestDispatcher {
+    public static final String MAILBOX_ATTRIBUTE = "mailbox";
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-", 0).factory());
+    private final Map<MailboxOverflowPolicy, Counter> droppedFrames = new EnumMap<>(MailboxOverflowPolicy.class);
+
+    @Value("${florae.ingest.mailbox-capacity:64}")
+    private int mailboxCapacity;
+
+    @Value("${florae.ingest.overflow-policy:DROP_OLDEST}")
+    private MailboxOverflowPolicy overflowPolicy;
+
+    public IngestDispatcher(MeterRegistry meterRegistry)
+    {
+        for (MailboxOverflowPolicy policy : MailboxOverflowPolicy.values())
+        {
+            droppedFrames.put(policy, Counter.builder("florae.ingest.dropped")
+                    .description("Frames dropped because the ingest mailbox of their session was full")
+                    .tag("policy", policy.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @FunctionalInterface
+    public interface MessageProcessor
+    {
+        void process(WebSocketSession session, WebSocketMessage<?> message) throws Exception;
+    }
+
+    /**
+     * Queues a frame for processing on the mailbox of its session.
+     *
+     * @param session the session the frame arrived on
+     * @param message the frame
+     * @param processor processes the frame on the draining thread
+     */
+    public void dispatch(WebSocketSession session, WebSocketMessage<?> message, MessageProcessor processor)
+    {
+        Mailbox mailbox = (Mailbox) session.getAttributes().computeIfAbsent(MAILBOX_ATTRIBUTE, key -> new Mailbox(session, processor));
+        mailbox.offer(detach(message));
+    }
+
+    /**
+     * Discards the queued frames of a closed session.
+     *
+     * @param session the closed session
+     */
+    public void close(WebSocketSession session)
+    {
+        Mailbox mailbox = (Mailbox) session.getAttributes().get(MAILBOX_ATTRIBUTE);
+
+        if (mailbox != null)
+        {
+            mailbox.close();
+        }
+    }
+
+    public long getDroppedFrames()
+    {
+        return (long) droppedFrames.values().stream().mapToDouble(Counter::count).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        executor.shutdown();
+
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS))
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The container may reuse the buffer of a binary frame once the handler returns, so its content is copied.
+     */
+    private static WebSocketMessage<?> detach(WebSocketMessage<?> message)
+    {
+        if (!(message instanceof BinaryMessage binaryMessage))
+        {
+            return message;
+        }
+
+        ByteBuffer payload = binaryMessage.getPayload();
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining()).put(payload.duplicate()).flip();
+        return new BinaryMessage(copy, binaryMessage.isLast());
+    }
+
+    private class Mailbox
+    {
+        private final WebSocketSession session;
+        private final MessageProcessor processor;
+        private final ArrayDeque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        Mailbox(WebSocketSession session, MessageProcessor processor)
+        {
+            this.session = session;
+            this.processor = processor;
+        }
+
+        void offer(WebSocketMessage<?> message)
+        {
+            boolean closeSession = false;
+
+            synchronized (this)
+            {
+                if (closed)
+                {
+                    return;
+                }
+
+                if (queue.size() >= mailboxCapacity)
+                {
+                    droppedFrames.get(overflowPolicy).increment();
+
+                    switch (overflowPolicy)
+                    {
+                        case DROP_OLDEST -> queue.poll();
+                        case DROP_NEWEST -> { return; }
+                        case CLOSE_SESSION -> {
+                            closed = true;
+                            queue.clear();
+                            closeSession = true;
+                        }
+                    }
+                }
+
+                if (!closeSession)
+                {
+                    queue.add(message);
+
+                    if (!draining)
+                    {
+                        draining = true;
+                        executor.execute(this::drain);
+                    }
+                }
+            }
+
+            if (closeSession)
+            {
+                log.warn("Ingest mailbox of session {} overflowed, closing connection", session.getId());
+                closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            queue.clear();
+        }
+
+        private void drain()
+        {
+            while (true)
+            {
+                WebSocketMessage<?> message;
+
+                synchronized (this)
+                {
+                    message = queue.poll();
+
+                    if (message == null)
+                    {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                try {
+                    processor.process(session, message);
+                } catch (Exception exception) {
+                    log.warn("Processing frame of session {} failed, closing connection: {}", session.getId(), exception.getMessage());
+                    close();
+                    closeQuietly(CloseStatus.SERVER_ERROR);
+                }
+            }
+        }
+
+        private void closeQuietly(CloseStatus status)
+        {
+            try {
+                session.close(status);
+            } catch (IOException exception) {
+                log.debug("Closing session {} failed: {}", session.getId(), exception.getMessage());
+            }
+        }
+    }
+}
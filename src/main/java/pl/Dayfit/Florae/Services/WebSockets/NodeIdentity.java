@@ -0,0 +1,21 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identifies this application node within the cluster. Taken from {@code florae.node.id}, or generated
+ * randomly at startup, so a restarted node never inherits the sessions of its previous instance.
+ */
+@Component
+public class NodeIdentity {
+    private final @Getter String id;
+
+    public NodeIdentity(@Value("${florae.node.id:}") String configuredId)
+    {
+        this.id = configuredId.isBlank() ? UUID.randomUUID().toString() : configuredId;
+    }
+}
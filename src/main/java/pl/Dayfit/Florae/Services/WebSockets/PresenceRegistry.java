@@ -0,0 +1,252 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
+import pl.Dayfit.Florae.Repositories.Redis.PresenceRepository;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which nodes of the cluster the connected FloraLinks and users are attached to.
+ * <p>
+ * A node registers its sessions in {@link PresenceRepository} when they connect and refreshes all of
+ * them in heartbeats every {@code florae.presence.heartbeat-ms}. A heartbeat reports when the local
+ * sessions of every FloraLink last received a frame. A FloraLink another node took over is won back if
+ * the local session is the one still receiving frames. It is left to the other node if that node
+ * received a frame more recently, e.g. after the FloraLink reconnected to it; the stale local session
+ * then stops counting as the owner.
+ * Presence expires after {@code florae.presence.ttl-ms}, so the sessions of a crashed node turn
+ * offline on their own. Heartbeats run on their own thread, so slow jobs of the shared scheduler never
+ * delay them past the TTL. Lookups
+ * of local sessions need no Redis access, lookups of remote ones are cached for
+ * {@code florae.presence.near-cache-ms}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceRegistry {
+    private final PresenceRepository presenceRepository;
+    private final NodeIdentity nodeIdentity;
+    private final SessionService sessionService;
+    private final Map<Integer, Integer> localDevices = new ConcurrentHashMap<>();
+    private final Map<String, Integer> localUsers = new ConcurrentHashMap<>();
+    private final Map<Integer, CachedPresence<String>> deviceNearCache = new ConcurrentHashMap<>();
+    private final Map<String, CachedPresence<Set<String>>> userNearCache = new ConcurrentHashMap<>();
+    private ScheduledExecutorService heartbeats;
+
+    @Value("${florae.presence.ttl-ms:30000}")
+    private long ttlMillis;
+
+    @Value("${florae.presence.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+
+    @Value("${florae.presence.near-cache-ms:1000}")
+    private long nearCacheMillis;
+
+    /**
+     * @param nodes the owning node(s), {@code null} or empty if offline
+     */
+    private record CachedPresence<T>(T nodes, long fetchedAt)
+    {
+    }
+
+    @PostConstruct
+    void start()
+    {
+        heartbeats = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("presence-heartbeat").daemon().factory());
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop()
+    {
+        heartbeats.shutdownNow();
+    }
+
+    @EventListener
+    @Order(SessionService.REGISTRATION_ORDER + 1)
+    public void register(WebSocketConnectionEstablishedEvent event)
+    {
+        String username = usernameOf(event.session());
+
+        try {
+            if (event.connectionType() == ConnectionType.FLORALINK && event.session().getAttributes().get("id") instanceof Integer floraLinkId)
+            {
+                localDevices.merge(floraLinkId, 1, Integer::sum);
+                deviceNearCache.remove(floraLinkId);
+                presenceRepository.takeOver(floraLinkId, nodeIdentity.getId(), Duration.ofMillis(ttlMillis));
+            }
+
+            else if (event.connectionType() == ConnectionType.USER && username != null)
+            {
+                localUsers.merge(username, 1, Integer::sum);
+                userNearCache.remove(username);
+                presenceRepository.refreshUsers(List.of(username), nodeIdentity.getId(), Duration.ofMillis(ttlMillis));
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Registering presence of session {} failed, retrying with next heartbeat: {}", event.session().getId(), exception.getMessage());
+        }
+    }
+
+    @EventListener
+    public void unregister(WebSocketConnectionClosedEvent event)
+    {
+        String username = usernameOf(event.session());
+
+        try {
+            if (event.connectionType() == ConnectionType.FLORALINK && event.session().getAttributes().get("id") instanceof Integer floraLinkId)
+            {
+                if (localDevices.computeIfPresent(floraLinkId, (id, sessions) -> sessions > 1 ? sessions - 1 : null) == null)
+                {
+                    presenceRepository.release(floraLinkId, nodeIdentity.getId());
+                }
+            }
+
+            else if (event.connectionType() == ConnectionType.USER && username != null)
+            {
+                if (localUsers.computeIfPresent(username, (name, sessions) -> sessions > 1 ? sessions - 1 : null) == null)
+                {
+                    presenceRepository.releaseUser(username, nodeIdentity.getId());
+                }
+            }
+        } catch (RuntimeException exception) {
+            log.debug("Releasing presence of session {} failed, it will expire: {}", event.session().getId(), exception.getMessage());
+        }
+    }
+
+    public void heartbeat()
+    {
+        try {
+            if (!localDevices.isEmpty())
+            {
+                List<Integer> floraLinkIds = List.copyOf(localDevices.keySet());
+                List<Long> lastSeen = floraLinkIds.stream().map(this::lastFrameAt).toList();
+                List<Integer> lost = presenceRepository.extend(floraLinkIds, lastSeen, nodeIdentity.getId(), Duration.ofMillis(ttlMillis));
+
+                for (Integer floraLinkId : lost)
+                {
+                    // the FloraLink reconnected to another node, which received a frame from it more recently
+                    localDevices.remove(floraLinkId);
+                    log.info("FloraLink {} is now connected to another node, routing to it", floraLinkId);
+                }
+            }
+
+            if (!localUsers.isEmpty())
+            {
+                presenceRepository.refreshUsers(List.copyOf(localUsers.keySet()), nodeIdentity.getId(), Duration.ofMillis(ttlMillis));
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Presence heartbeat of {} FloraLinks and {} users failed: {}", localDevices.size(), localUsers.size(), exception.getMessage());
+        }
+    }
+
+    /**
+     * @param floraLinkId the FloraLink identifier
+     * @return the id of the node the FloraLink is connected to, or {@code null} if it is offline
+     */
+    public String findNode(int floraLinkId)
+    {
+        if (localDevices.containsKey(floraLinkId))
+        {
+            return nodeIdentity.getId();
+        }
+
+        long now = System.currentTimeMillis();
+        CachedPresence<String> cached = deviceNearCache.get(floraLinkId);
+
+        if (cached != null && now - cached.fetchedAt() < nearCacheMillis)
+        {
+            return cached.nodes();
+        }
+
+        String nodeId = presenceRepository.findNode(floraLinkId);
+        deviceNearCache.put(floraLinkId, new CachedPresence<>(nodeId, now));
+        return nodeId;
+    }
+
+    /**
+     * @param username the username
+     * @return the ids of the nodes the user has sessions on, possibly empty
+     */
+    public Set<String> findUserNodes(String username)
+    {
+        long now = System.currentTimeMillis();
+        CachedPresence<Set<String>> cached = userNearCache.get(username);
+
+        if (cached != null && now - cached.fetchedAt() < nearCacheMillis)
+        {
+            return cached.nodes();
+        }
+
+        Set<String> nodes = presenceRepository.findUserNodes(username);
+
+        if (localUsers.containsKey(username) && !nodes.contains(nodeIdentity.getId()))
+        {
+            nodes = new HashSet<>(nodes);
+            nodes.add(nodeIdentity.getId());
+        }
+
+        userNearCache.put(username, new CachedPresence<>(nodes, now));
+        return nodes;
+    }
+
+    public boolean isOnline(int floraLinkId)
+    {
+        return findNode(floraLinkId) != null;
+    }
+
+    @Scheduled(fixedDelayString = "${florae.presence.ttl-ms:30000}")
+    public void evictNearCache()
+    {
+        long oldest = System.currentTimeMillis() - nearCacheMillis;
+        deviceNearCache.values().removeIf(cached -> cached.fetchedAt() < oldest);
+        userNearCache.values().removeIf(cached -> cached.fetchedAt() < oldest);
+    }
+
+    /**
+     * @return when an open local session of the FloraLink last received a frame, or 0 if it has none
+     */
+    private long lastFrameAt(Integer floraLinkId)
+    {
+        long lastFrameAt = 0;
+
+        for (SessionOutbox outbox : sessionService.getSessions(ChannelMessagingHandler.FLORALINK_CHANNEL_PREFIX + floraLinkId))
+        {
+            WebSocketSession session = outbox.getSession();
+
+            if (session.isOpen() && session.getAttributes().get(DeviceContextRegistry.CONTEXT_ATTRIBUTE) instanceof DeviceContextRegistry.Holder holder)
+            {
+                lastFrameAt = Math.max(lastFrameAt, holder.getLastFrameAt());
+            }
+        }
+
+        return lastFrameAt;
+    }
+
+    private static String usernameOf(WebSocketSession session)
+    {
+        Principal principal = session.getPrincipal();
+        return principal == null ? null : principal.getName();
+    }
+}
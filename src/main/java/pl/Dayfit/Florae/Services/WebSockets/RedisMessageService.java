@@ -2,58 +2,46 @@ package pl.Dayfit.Florae.Services.WebSockets;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
-import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.WebSocketSession;
-import pl.Dayfit.Florae.Enums.ConnectionType;
-import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
-import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
 import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * Subscribes this node to its {@code node.{id}} channel and to the {@code plant-updates} channel once.
+ * <p>
+ * Publishers address messages to the nodes holding the recipient sessions and routing a message to a
+ * session is done locally by {@link ChannelMessagingHandler}, so connecting and disconnecting clients
+ * causes no subscription changes in Redis. The subscription is made on the
+ * first scheduler run and retried until it succeeds, so the application starts while Redis is down;
+ * afterwards the listener container restores it after connection losses.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RedisMessageService {
     private final RedisMessageListenerContainer container;
     private final ChannelMessagingHandler channelMessagingHandler;
-    private final Map<String, ChannelTopic> topics = new ConcurrentHashMap<>();
-    private final Map<String, MessageListener> listeners = new ConcurrentHashMap<>();
-
-    @EventListener
-    public void register(WebSocketConnectionEstablishedEvent event)
-    {
-        log.trace("Handling user connection registration id: {}", event.session().getId());
-        boolean isFloralink = event.connectionType() == ConnectionType.FLORALINK;
-
-        WebSocketSession session = event.session();
-        String identifier = session.getAttributes().get(isFloralink ? "id" : "username").toString();
-
-        ChannelTopic topic = new ChannelTopic((isFloralink ? "floralink." : "user.") + identifier);
+    private final DeviceContextRegistry deviceContextRegistry;
+    private final NodeIdentity nodeIdentity;
+    private volatile boolean subscribed;
 
-        MessageListener messageListener = channelMessagingHandler;
-
-        container.addMessageListener(messageListener, topic);
-        topics.put(identifier, topic);
-        listeners.put(identifier, messageListener);
-    }
-
-    @EventListener
-    public void unregister(WebSocketConnectionClosedEvent event)
+    @Scheduled(fixedDelayString = "${florae.fanout.subscribe-retry-ms:5000}")
+    public void subscribe()
     {
-        log.trace("Handling user connection unregistration id: {}", event.session().getId());
-        boolean isFloralink = event.connectionType() == ConnectionType.FLORALINK;
-
-        WebSocketSession session = event.session();
-        String identifier = (String) session.getAttributes().get(isFloralink ? "linkedPlantId" : "username");
-
-        container.removeMessageListener(listeners.get(identifier), topics.get(identifier));
-        topics.remove(identifier);
-        listeners.remove(identifier);
+        if (subscribed)
+        {
+            return;
+        }
+
+        try {
+            container.addMessageListener(channelMessagingHandler, new ChannelTopic(FanoutPublisher.NODE_CHANNEL_PREFIX + nodeIdentity.getId()));
+            container.addMessageListener(deviceContextRegistry, new ChannelTopic(DeviceContextRegistry.PLANT_UPDATES_CHANNEL));
+            subscribed = true;
+            log.info("Subscribed to node channel {}", FanoutPublisher.NODE_CHANNEL_PREFIX + nodeIdentity.getId());
+        } catch (RuntimeException exception) {
+            log.warn("Subscribing to node channel failed, retrying: {}", exception.getMessage());
+        }
     }
 }
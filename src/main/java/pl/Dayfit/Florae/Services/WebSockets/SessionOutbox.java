@@ -0,0 +1,121 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded send queue of one outgoing WebSocket session.
+ * <p>
+ * {@link #send(WebSocketMessage)} only queues the message; whenever messages are queued a single
+ * thread of the executor writes them to the session in order, so a client that reads slowly only
+ * holds up its own queue. A client that lets its queue fill up is considered stalled and its
+ * session is closed.
+ */
+@Slf4j
+public class SessionOutbox {
+    private final @Getter WebSocketSession session;
+    private final Executor executor;
+    private final int capacity;
+    private final ArrayDeque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+    private boolean draining;
+    private boolean closed;
+
+    public SessionOutbox(WebSocketSession session, Executor executor, int capacity)
+    {
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a message without blocking.
+     *
+     * @param message the message to send
+     * @return {@code false} if the session is closed or was evicted because its queue is full
+     */
+    public boolean send(WebSocketMessage<?> message)
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return false;
+            }
+
+            if (queue.size() < capacity)
+            {
+                queue.add(message);
+
+                if (!draining)
+                {
+                    draining = true;
+                    executor.execute(this::drain);
+                }
+
+                return true;
+            }
+
+            closed = true;
+            queue.clear();
+        }
+
+        log.warn("Send queue of session {} is full, closing slow connection", session.getId());
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+        return false;
+    }
+
+    public synchronized void close()
+    {
+        closed = true;
+        queue.clear();
+    }
+
+    private void drain()
+    {
+        while (true)
+        {
+            WebSocketMessage<?> message;
+
+            synchronized (this)
+            {
+                message = queue.poll();
+
+                if (message == null)
+                {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (!session.isOpen())
+            {
+                close();
+                continue;
+            }
+
+            try {
+                session.sendMessage(message);
+            } catch (IOException | RuntimeException exception) {
+                log.debug("Sending message to session {} failed, closing connection: {}", session.getId(), exception.getMessage());
+                close();
+                closeQuietly(CloseStatus.SERVER_ERROR);
+            }
+        }
+    }
+
+    private void closeQuietly(CloseStatus status)
+    {
+        try {
+            session.close(status);
+        } catch (IOException exception) {
+            log.debug("Closing session {} failed: {}", session.getId(), exception.getMessage());
+        }
+    }
+}
@@ -1,34 +1,115 @@
 package pl.Dayfit.Florae.Services.WebSockets;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.WebSocketSession;
 import pl.Dayfit.Florae.Enums.ConnectionType;
 import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
 import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
 
 import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the WebSocket sessions connected to this node, by the Redis channel they listen to
+ * ({@code user.{username}} or {@code floralink.{id}}).
+ * <p>
+ * A channel can have any number of sessions, e.g. one per open browser tab. Every session is
+ * registered as a {@link SessionOutbox} with a send queue of {@code florae.fanout.send-queue-capacity}
+ * messages, drained on virtual threads. Lookups are lock-free.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SessionService {
-    private final ConcurrentHashMap<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, WebSocketSession> floralinkSessions = new ConcurrentHashMap<>();
+    public static final String OUTBOX_ATTRIBUTE = "outbox";
+
+    /**
+     * Order of the connection listeners that make a session reachable, ahead of listeners that send to it
+     */
+    public static final int REGISTRATION_ORDER = Ordered.HIGHEST_PRECEDENCE;
+
+    private final ConcurrentHashMap<String, Set<SessionOutbox>> channels = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fanout-", 0).factory());
+
+    @Value("${florae.fanout.send-queue-capacity:32}")
+    private int sendQueueCapacity;
 
     @EventListener
+    @Order(REGISTRATION_ORDER)
     public void registerSession(WebSocketConnectionEstablishedEvent event) {
         WebSocketSession session = event.session();
-        ConnectionType connectionType = event.connectionType();
 
         if (session == null) {
             log.warn("Session is null for event: {}", event);
             throw new IllegalStateException("Session is null for event: " + event);
         }
 
+        String channel = channelOf(session, event.connectionType());
+        SessionOutbox outbox = new SessionOutbox(session, executor, sendQueueCapacity);
+
+        session.getAttributes().put(OUTBOX_ATTRIBUTE, outbox);
+        channels.compute(channel, (key, outboxes) ->
+        {
+            Set<SessionOutbox> registered = outboxes == null ? new CopyOnWriteArraySet<>() : outboxes;
+            registered.add(outbox);
+            return registered;
+        });
+    }
+
+    @EventListener
+    public void unregisterSession(WebSocketConnectionClosedEvent event)
+    {
+        WebSocketSession session = event.session();
+        log.trace("Handling session unregister id: {}", session.getId());
+
+        if (!(session.getAttributes().get(OUTBOX_ATTRIBUTE) instanceof SessionOutbox outbox))
+        {
+            log.debug("Session {} was not registered", session.getId());
+            return;
+        }
+
+        outbox.close();
+        channels.computeIfPresent(channelOf(session, event.connectionType()), (channel, outboxes) ->
+        {
+            outboxes.remove(outbox);
+            return outboxes.isEmpty() ? null : outboxes;
+        });
+    }
+
+    /**
+     * @param channel the channel name
+     * @return the sessions on this node listening to the channel, possibly empty
+     */
+    public Set<SessionOutbox> getSessions(String channel)
+    {
+        return channels.getOrDefault(channel, Collections.emptySet());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        executor.shutdown();
+
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS))
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String channelOf(WebSocketSession session, ConnectionType connectionType)
+    {
         if (connectionType == ConnectionType.FLORALINK)
         {
             Object potentialIdentifier = session.getAttributes().get("id");
@@ -44,8 +125,7 @@ public class SessionService {
                 throw new IllegalStateException("Session attribute id is not an integer");
             }
 
-            floralinkSessions.put(identifier.toString(), session);
-            return;
+            return ChannelMessagingHandler.FLORALINK_CHANNEL_PREFIX + identifier;
         }
 
         Principal principal = session.getPrincipal();
@@ -55,48 +135,6 @@ public class SessionService {
             throw new IllegalStateException("Session principal is null or has no name");
         }
 
-        userSessions.put(principal.getName(), session);
-    }
-
-
-    @EventListener
-    public void unregisterSession(WebSocketConnectionClosedEvent event)
-    {
-        WebSocketSession session = event.session();
-        ConnectionType connectionType = event.connectionType();
-        log.trace("Handling session unregister id: {}", session.getId());
-
-
-        if (connectionType == ConnectionType.FLORALINK)
-        {
-            if (!floralinkSessions.containsKey(session.getId()))
-            {
-                log.debug("FloraLink Session id was not in session map, at {}", session.getId());
-                return;
-            }
-
-            floralinkSessions.remove(session.getId());
-        }
-
-        if (connectionType == ConnectionType.USER)
-        {
-            if (!userSessions.containsKey(session.getId()))
-            {
-                log.debug("User Session id was not in session map, at {}", session.getId());
-                return;
-            }
-
-            userSessions.remove(session.getId());
-        }
-    }
-
-    public WebSocketSession getFloralinkSessionById(String floraLinkId)
-    {
-        return floralinkSessions.get(floraLinkId);
-    }
-
-    public WebSocketSession getSessionByUsername(String username)
-    {
-        return userSessions.get(username);
+        return ChannelMessagingHandler.USER_CHANNEL_PREFIX + principal.getName();
     }
 }
@@ -0,0 +1,296 @@
+package pl.Dayfit.Florae.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Append-only compressed chunk of a single time series, using the encoding of Facebook's Gorilla:
+ * timestamps are stored as delta-of-deltas and values as the XOR with the previous value, both with
+ * variable length bit codes. Regularly sampled, slowly changing sensor readings take one to two bytes
+ * per point.
+ * <p>
+ * The serialized form ({@link #toByteArray()}) starts with the number of points as a 4-byte big-endian
+ * integer followed by the bit stream. Points are read back with a {@link Cursor}. Not thread-safe.
+ */
+public class GorillaChunk {
+    private static final int HEADER_BYTES = Integer.BYTES;
+
+    private byte[] buffer = new byte[64];
+    private long bitPosition = HEADER_BYTES * 8L;
+
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeadingZeros = Integer.MAX_VALUE;
+    private int lastTrailingZeros;
+
+    public void append(long timestamp, double value)
+    {
+        long valueBits = Double.doubleToRawLongBits(value);
+
+        if (count == 0)
+        {
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+            firstTimestamp = timestamp;
+        }
+        else
+        {
+            long delta = timestamp - lastTimestamp;
+            writeTimestamp(delta - lastDelta);
+            writeValue(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public long getFirstTimestamp()
+    {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp()
+    {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return the number of bytes the chunk takes when serialized
+     */
+    public int sizeInBytes()
+    {
+        return (int) ((bitPosition + 7) / 8);
+    }
+
+    public byte[] toByteArray()
+    {
+        byte[] bytes = Arrays.copyOf(buffer, sizeInBytes());
+        bytes[0] = (byte) (count >>> 24);
+        bytes[1] = (byte) (count >>> 16);
+        bytes[2] = (byte) (count >>> 8);
+        bytes[3] = (byte) count;
+        return bytes;
+    }
+
+    /**
+     * @return a cursor over a copy of the points appended so far
+     */
+    public Cursor cursor()
+    {
+        return new Cursor(toByteArray());
+    }
+
+    public static Cursor cursor(byte[] chunk)
+    {
+        return new Cursor(chunk);
+    }
+
+    private void writeTimestamp(long deltaOfDelta)
+    {
+        if (deltaOfDelta == 0)
+        {
+            writeBits(0b0, 1);
+        }
+        else if (deltaOfDelta >= -64 && deltaOfDelta <= 63)
+        {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        }
+        else if (deltaOfDelta >= -256 && deltaOfDelta <= 255)
+        {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        }
+        else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047)
+        {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        }
+        else
+        {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(long xor)
+    {
+        if (xor == 0)
+        {
+            writeBits(0b0, 1);
+            return;
+        }
+
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+
+        if (leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros)
+        {
+            writeBits(0b10, 2);
+            writeBits(xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros);
+            return;
+        }
+
+        int significantBits = 64 - leadingZeros - trailingZeros;
+
+        writeBits(0b11, 2);
+        writeBits(leadingZeros, 5);
+        writeBits(significantBits - 1, 6);
+        writeBits(xor >>> trailingZeros, significantBits);
+
+        lastLeadingZeros = leadingZeros;
+        lastTrailingZeros = trailingZeros;
+    }
+
+    private void writeBits(long value, int bits)
+    {
+        long end = bitPosition + bits;
+
+        if (end > buffer.length * 8L)
+        {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, (int) ((end + 7) / 8)));
+        }
+
+        for (int bit = bits - 1; bit >= 0; bit--)
+        {
+            if (((value >>> bit) & 1) != 0)
+            {
+                buffer[(int) (bitPosition >>> 3)] |= (byte) (0x80 >>> (bitPosition & 7));
+            }
+
+            bitPosition++;
+        }
+    }
+
+    /**
+     * Forward-only reader of a serialized chunk. {@link #next()} advances to the next point, whose
+     * timestamp and value are then available without allocating.
+     */
+    public static class Cursor
+    {
+        private final byte[] chunk;
+        private final int count;
+        private long bitPosition = HEADER_BYTES * 8L;
+
+        private int read;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private int leadingZeros;
+        private int trailingZeros;
+
+        private Cursor(byte[] chunk)
+        {
+            this.chunk = chunk;
+            this.count = ((chunk[0] & 0xFF) << 24) | ((chunk[1] & 0xFF) << 16) | ((chunk[2] & 0xFF) << 8) | (chunk[3] & 0xFF);
+        }
+
+        public boolean next()
+        {
+            if (read == count)
+            {
+                return false;
+            }
+
+            if (read == 0)
+            {
+                timestamp = readBits(64);
+                valueBits = readBits(64);
+            }
+            else
+            {
+                delta += readDeltaOfDelta();
+                timestamp += delta;
+                readValue();
+            }
+
+            read++;
+            return true;
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public double getValue()
+        {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        private long readDeltaOfDelta()
+        {
+            if (readBits(1) == 0)
+            {
+                return 0;
+            }
+
+            if (readBits(1) == 0)
+            {
+                return signed(readBits(7), 7);
+            }
+
+            if (readBits(1) == 0)
+            {
+                return signed(readBits(9), 9);
+            }
+
+            if (readBits(1) == 0)
+            {
+                return signed(readBits(12), 12);
+            }
+
+            return readBits(64);
+        }
+
+        private void readValue()
+        {
+            if (readBits(1) == 0)
+            {
+                return;
+            }
+
+            if (readBits(1) == 1)
+            {
+                leadingZeros = (int) readBits(5);
+                int significantBits = (int) readBits(6) + 1;
+                trailingZeros = 64 - leadingZeros - significantBits;
+            }
+
+            valueBits ^= readBits(64 - leadingZeros - trailingZeros) << trailingZeros;
+        }
+
+        private long readBits(int bits)
+        {
+            long value = 0;
+
+            for (int i = 0; i < bits; i++)
+            {
+                int bit = (chunk[(int) (bitPosition >>> 3)] >>> (7 - (bitPosition & 7))) & 1;
+                value = (value << 1) | bit;
+                bitPosition++;
+            }
+
+            return value;
+        }
+
+        private static long signed(long value, int bits)
+        {
+            return (value << (64 - bits)) >> (64 - bits);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package pl.Dayfit.Florae.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal on local disk, split into fixed-size memory-mapped segments.
+ * <p>
+ * Every record is stored as {@code [int length][int crc32c][payload]} at a global position
+ * ({@code segment index * segment size + offset}); a zero length marks the end of the written data
+ * and {@code -1} the unused tail of a full segment. Records are replayed in order from the
+ * checkpoint, which is kept in a {@code checkpoint} file, and segments lying completely before the
+ * checkpoint are deleted. On startup the write position is recovered by scanning the last segment
+ * up to the first empty or corrupted record.
+ * <p>
+ * Each journal directory has a stable random {@link #getId() id}, so sinks can store the position
+ * of the last applied record next to the data and skip records that were applied before a crash.
+ */
+public class IngestJournal implements Closeable {
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int SEGMENT_END = -1;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final String id;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private long writePosition;
+    private volatile long checkpoint;
+
+    @FunctionalInterface
+    public interface RecordHandler
+    {
+        /**
+         * @param position the position of the record
+         * @param payload the record payload, valid only during the call
+         * @return whether the record was applied; replay stops at the first record that was not
+         */
+        boolean apply(long position, ByteBuffer payload);
+    }
+
+    public IngestJournal(Path directory, int segmentSize) throws IOException
+    {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.id = readOrCreateId();
+        this.checkpoint = readCheckpoint();
+
+        try (var files = Files.list(directory))
+        {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList())
+            {
+                String name = file.getFileName().toString();
+                long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(index, map(file));
+            }
+        }
+
+        writePosition = segments.isEmpty() ? checkpoint : recoverWritePosition();
+
+        if (checkpoint > writePosition)
+        {
+            checkpoint = writePosition;
+        }
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return whether there are records that were not replayed yet
+     */
+    public synchronized boolean hasPending()
+    {
+        return checkpoint < writePosition;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param payload the record payload; read from its position to its limit
+     * @return the position of the record
+     * @throws IOException if a new segment cannot be created
+     * @throws IllegalArgumentException if the record does not fit into a segment
+     */
+    public synchronized long append(ByteBuffer payload) throws IOException
+    {
+        int length = payload.remaining();
+
+        if (length == 0 || HEADER_BYTES + length > segmentSize)
+        {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit into a journal segment");
+        }
+
+        int offset = (int) (writePosition % segmentSize);
+
+        if (offset + HEADER_BYTES + length > segmentSize)
+        {
+            if (offset + Integer.BYTES <= segmentSize)
+            {
+                segment(writePosition).putInt(offset, SEGMENT_END);
+            }
+
+            writePosition += segmentSize - offset;
+            offset = 0;
+        }
+
+        MappedByteBuffer segment = segment(writePosition);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        segment.put(offset + HEADER_BYTES, payload, payload.position(), length);
+        segment.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        segment.putInt(offset, length);
+
+        long position = writePosition;
+        writePosition += HEADER_BYTES + length;
+        return position;
+    }
+
+    /**
+     * Passes pending records to the handler in order, advancing the checkpoint past every applied record.
+     *
+     * @param maxRecords maximum number of records to replay
+     * @param handler applies a record to the sink
+     * @return the number of applied records
+     * @throws IOException if the checkpoint cannot be stored
+     */
+    public int replay(int maxRecords, RecordHandler handler) throws IOException
+    {
+        long end;
+        synchronized (this)
+        {
+            end = writePosition;
+        }
+
+        long position = checkpoint;
+        int replayed = 0;
+
+        try {
+            while (position < end && replayed < maxRecords)
+            {
+                int offset = (int) (position % segmentSize);
+                ByteBuffer segment = segmentView(position);
+                int length = offset + Integer.BYTES <= segmentSize ? segment.getInt(offset) : SEGMENT_END;
+
+                if (length == SEGMENT_END)
+                {
+                    position += segmentSize - offset;
+                    continue;
+                }
+
+                ByteBuffer payload = segment.slice(offset + HEADER_BYTES, length);
+
+                if (!handler.apply(position, payload))
+                {
+                    break;
+                }
+
+                position += HEADER_BYTES + length;
+                replayed++;
+            }
+        } finally {
+            if (position != checkpoint)
+            {
+                checkpoint(position);
+            }
+        }
+
+        return replayed;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        segments.values().forEach(MappedByteBuffer::force);
+        segments.clear();
+    }
+
+    private void checkpoint(long position) throws IOException
+    {
+        Path temporary = directory.resolve("checkpoint.tmp");
+        Files.writeString(temporary, Long.toString(position));
+        Files.move(temporary, directory.resolve("checkpoint"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = position;
+
+        synchronized (this)
+        {
+            long currentSegment = writePosition / segmentSize;
+
+            for (Map.Entry<Long, MappedByteBuffer> entry : Map.copyOf(segments).entrySet())
+            {
+                long index = entry.getKey();
+
+                if (index < position / segmentSize && index < currentSegment)
+                {
+                    segments.remove(index);
+                    Files.deleteIfExists(segmentPath(index));
+                }
+            }
+        }
+    }
+
+    private long recoverWritePosition()
+    {
+        long index = segments.lastKey();
+        ByteBuffer segment = segments.get(index);
+        int offset = index == checkpoint / segmentSize ? (int) (checkpoint % segmentSize) : 0;
+
+        while (offset + HEADER_BYTES <= segmentSize)
+        {
+            int length = segment.getInt(offset);
+
+            if (length == SEGMENT_END)
+            {
+                return (index + 1) * segmentSize;
+            }
+
+            if (length <= 0 || offset + HEADER_BYTES + length > segmentSize)
+            {
+                break;
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(offset + HEADER_BYTES, length));
+
+            if ((int) crc.getValue() != segment.getInt(offset + Integer.BYTES))
+            {
+                break;
+            }
+
+            offset += HEADER_BYTES + length;
+        }
+
+        return index * segmentSize + offset;
+    }
+
+    private synchronized ByteBuffer segmentView(long position)
+    {
+        MappedByteBuffer segment = segments.get(position / segmentSize);
+
+        if (segment == null)
+        {
+            throw new IllegalStateException("Journal segment of position " + position + " is missing");
+        }
+
+        return segment.duplicate();
+    }
+
+    private MappedByteBuffer segment(long position) throws IOException
+    {
+        long index = position / segmentSize;
+        MappedByteBuffer segment = segments.get(index);
+
+        if (segment == null)
+        {
+            segment = map(segmentPath(index));
+            segments.put(index, segment);
+        }
+
+        return segment;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(long index)
+    {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private String readOrCreateId() throws IOException
+    {
+        Path file = directory.resolve("journal.id");
+
+        if (Files.exists(file))
+        {
+            return Files.readString(file, StandardCharsets.UTF_8).trim();
+        }
+
+        String created = UUID.randomUUID().toString();
+        Files.writeString(file, created, StandardCharsets.UTF_8);
+        return created;
+    }
+
+    private long readCheckpoint() throws IOException
+    {
+        Path file = directory.resolve("checkpoint");
+        return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+    }
+}
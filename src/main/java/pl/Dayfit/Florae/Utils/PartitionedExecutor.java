@@ -0,0 +1,181 @@
+package pl.Dayfit.Florae.Utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs work items on a fixed number of lanes, each a bounded queue drained by its own thread.
+ * <p>
+ * Items are assigned to a lane by a partition key, so items with the same key are handled in
+ * submission order while different keys proceed in parallel. A lane takes everything queued at once
+ * (up to {@code maxBatch} items) and passes it to the handler as one batch. An item for a full lane is
+ * rejected and counted, either at once or, when submitted with a timeout, once the lane stayed full
+ * for that long.
+ * <p>
+ * Per lane the queue size, processed and rejected items and the batch handling time are published
+ * as {@code <name>.lane.*} meters tagged with {@code lane}.
+ *
+ * @param <T> the type of work items
+ */
+@Slf4j
+public class PartitionedExecutor<T> implements AutoCloseable {
+    private final String name;
+    private final List<Lane> lanes;
+    private final int maxBatch;
+    private final Consumer<List<T>> handler;
+    private volatile boolean running = true;
+
+    private class Lane
+    {
+        private final BlockingQueue<T> queue;
+        private final Counter processed;
+        private final Counter rejected;
+        private final Timer batchTimer;
+        private final Thread thread;
+
+        Lane(int index, int capacity, MeterRegistry meterRegistry)
+        {
+            queue = new ArrayBlockingQueue<>(capacity);
+            String lane = Integer.toString(index);
+
+            Gauge.builder(name + ".lane.queue.size", queue, BlockingQueue::size).tag("lane", lane).register(meterRegistry);
+            processed = Counter.builder(name + ".lane.processed").tag("lane", lane).register(meterRegistry);
+            rejected = Counter.builder(name + ".lane.rejected").tag("lane", lane).register(meterRegistry);
+            batchTimer = Timer.builder(name + ".lane.batch").tag("lane", lane).register(meterRegistry);
+
+            thread = Thread.ofVirtual().name(name + "-lane-" + index).start(this::run);
+        }
+
+        private void run()
+        {
+            List<T> batch = new ArrayList<>(maxBatch);
+
+            while (running || !queue.isEmpty())
+            {
+                try {
+                    T first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+                    if (first == null)
+                    {
+                        continue;
+                    }
+
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatch - 1);
+                    batchTimer.record(() -> handle(batch));
+                    processed.increment(batch.size());
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void handle(List<T> batch)
+        {
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException exception) {
+                log.error("Handling a batch of {} items on {} failed: {}", batch.size(), thread.getName(), exception.getMessage(), exception);
+            }
+        }
+    }
+
+    /**
+     * @param name prefix of lane thread and meter names
+     * @param laneCount number of lanes
+     * @param capacity queue capacity of every lane
+     * @param maxBatch maximum number of items passed to the handler at once
+     * @param handler handles a batch of items of one lane, in submission order
+     * @param meterRegistry registry for the lane meters
+     */
+    public PartitionedExecutor(String name, int laneCount, int capacity, int maxBatch, Consumer<List<T>> handler, MeterRegistry meterRegistry)
+    {
+        this.name = name;
+        this.maxBatch = maxBatch;
+        this.handler = handler;
+        this.lanes = new ArrayList<>(laneCount);
+
+        for (int i = 0; i < laneCount; i++)
+        {
+            lanes.add(new Lane(i, capacity, meterRegistry));
+        }
+    }
+
+    /**
+     * Queues an item on the lane of its partition key.
+     *
+     * @param partitionKey items with equal keys are handled in order
+     * @param item the work item
+     * @return {@code false} if the lane was full and the item was rejected
+     */
+    public boolean submit(int partitionKey, T item)
+    {
+        Lane lane = lanes.get(Math.floorMod(partitionKey, lanes.size()));
+
+        if (!running || !lane.queue.offer(item))
+        {
+            lane.rejected.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues an item on the lane of its partition key, waiting for space if the lane is full. If the
+     * calling thread is interrupted meanwhile, the item is rejected and the interrupt flag kept set.
+     *
+     * @param partitionKey items with equal keys are handled in order
+     * @param item the work item
+     * @param timeoutMillis how long to wait for space in the lane
+     * @return {@code false} if the lane stayed full and the item was rejected
+     */
+    public boolean submit(int partitionKey, T item, long timeoutMillis)
+    {
+        Lane lane = lanes.get(Math.floorMod(partitionKey, lanes.size()));
+
+        try {
+            if (running && lane.queue.offer(item, timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                return true;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        lane.rejected.increment();
+        return false;
+    }
+
+    /**
+     * Stops accepting items and waits for the lanes to drain. If the calling thread is interrupted
+     * meanwhile, it stops waiting and keeps its interrupt flag set.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+
+        try {
+            for (Lane lane : lanes)
+            {
+                lane.thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package pl.Dayfit.Florae.Utils;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Mergeable quantile sketch with a bounded relative error (a DDSketch variant).
+ * <p>
+ * Values are counted in logarithmically sized buckets, so any quantile is returned within
+ * {@link #RELATIVE_ACCURACY} of the true value. Merging two sketches only adds bucket counts,
+ * which makes sketches from different hours or nodes cheap to combine. Buckets are addressed by
+ * a short key ({@code +i}, {@code -i} or {@code 0}) that can be stored as e.g. a Redis hash field.
+ * Not thread-safe.
+ */
+public class QuantileSketch {
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE_VALUE = 1e-6;
+
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+    private long count;
+
+    public void add(double value)
+    {
+        add(value, 1);
+    }
+
+    public void add(double value, long weight)
+    {
+        if (Double.isNaN(value) || weight <= 0)
+        {
+            return;
+        }
+
+        if (value > MIN_INDEXABLE_VALUE)
+        {
+            positive.add(index(value), weight);
+        }
+        else if (value < -MIN_INDEXABLE_VALUE)
+        {
+            negative.add(index(-value), weight);
+        }
+        else
+        {
+            zeroCount += weight;
+        }
+
+        count += weight;
+    }
+
+    /**
+     * Adds a bucket previously produced by {@link #forEachBucket(ObjIntConsumer)}. Unknown keys are ignored.
+     *
+     * @param key the bucket key
+     * @param weight the number of values in the bucket
+     */
+    public void addBucket(String key, long weight)
+    {
+        if (key.isEmpty() || weight <= 0)
+        {
+            return;
+        }
+
+        switch (key.charAt(0))
+        {
+            case '+' -> positive.add(Integer.parseInt(key, 1, key.length(), 10), weight);
+            case '-' -> negative.add(Integer.parseInt(key, 1, key.length(), 10), weight);
+            case '0' -> zeroCount += weight;
+            default -> { return; }
+        }
+
+        count += weight;
+    }
+
+    public void merge(QuantileSketch other)
+    {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * Passes every non-empty bucket to the consumer. Counts are passed as {@code int} since a single
+     * bucket of an hourly sketch never comes close to overflowing it.
+     *
+     * @param consumer receives the bucket key and its count
+     */
+    public void forEachBucket(ObjIntConsumer<String> consumer)
+    {
+        negative.forEach('-', consumer);
+
+        if (zeroCount > 0)
+        {
+            consumer.accept("0", (int) zeroCount);
+        }
+
+        positive.forEach('+', consumer);
+    }
+
+    /**
+     * @param quantile a value between 0 and 1
+     * @return the estimated value at the quantile, or {@link Double#NaN} if the sketch is empty
+     */
+    public double quantile(double quantile)
+    {
+        if (count == 0)
+        {
+            return Double.NaN;
+        }
+
+        long rank = (long) (Math.max(0, Math.min(1, quantile)) * (count - 1));
+
+        if (rank < negative.total)
+        {
+            return -value(negative.indexAtRankDescending(rank));
+        }
+
+        rank -= negative.total;
+
+        if (rank < zeroCount)
+        {
+            return 0;
+        }
+
+        return value(positive.indexAtRank(rank - zeroCount));
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    private static int index(double value)
+    {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    private static double value(int index)
+    {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * Dense bucket counts over the range of indexes seen so far.
+     */
+    private static class Store
+    {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        void add(int index, long weight)
+        {
+            ensureCapacity(index);
+            counts[index - offset] += weight;
+            total += weight;
+        }
+
+        void merge(Store other)
+        {
+            for (int i = 0; i < other.counts.length; i++)
+            {
+                if (other.counts[i] > 0)
+                {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void forEach(char sign, ObjIntConsumer<String> consumer)
+        {
+            for (int i = 0; i < counts.length; i++)
+            {
+                if (counts[i] > 0)
+                {
+                    consumer.accept(sign + Integer.toString(offset + i), (int) counts[i]);
+                }
+            }
+        }
+
+        int indexAtRank(long rank)
+        {
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+
+                if (seen > rank)
+                {
+                    return offset + i;
+                }
+            }
+
+            return offset + counts.length - 1;
+        }
+
+        int indexAtRankDescending(long rank)
+        {
+            long seen = 0;
+
+            for (int i = counts.length - 1; i >= 0; i--)
+            {
+                seen += counts[i];
+
+                if (seen > rank)
+                {
+                    return offset + i;
+                }
+            }
+
+            return offset;
+        }
+
+        private void ensureCapacity(int index)
+        {
+            if (counts.length == 0)
+            {
+                counts = new long[16];
+                offset = index - 8;
+                return;
+            }
+
+            if (index >= offset && index < offset + counts.length)
+            {
+                return;
+            }
+
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length, index + 1);
+            int length = Math.max(high - low, counts.length * 2);
+            int newOffset = index < offset ? high - length : low;
+
+            long[] grown = new long[length];
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+-- Atomically merges buffered readings into a plant's daily report hash.
+--
+-- Every sensor keeps a ring of hourly buckets; bucket fields are named
+-- {type}:{slot}:{stat} where slot = hour % buckets. A bucket still holding an older
+-- hour is overwritten, so the hash never grows beyond buckets * 7 fields per sensor.
+-- Quantile sketch buckets of every sensor hour are added to a separate hash that
+-- expires together with the window.
+--
+-- KEYS[1]  daily report hash (daily-report:{<plantId>})
+-- KEYS[2..] sketch hash of every group below, in the same order
+--          (daily-sketch:{<plantId>}:<type>:<hour>); the plant id hash tag keeps
+--          all keys in one cluster slot
+-- ARGV[1]  owner username
+-- ARGV[2]  FloraLink id
+-- ARGV[3]  number of buckets in the window
+-- ARGV[4]  current hour (hours since the epoch); groups of later hours are
+--          clamped to it by the caller
+-- ARGV[5]  key time-to-live in milliseconds
+-- ARGV[6]  guard field, or an empty string when the merge is not guarded
+-- ARGV[7]  guard position; the merge is skipped if the guard field already holds
+--          this or a later position (used when replaying the ingest journal)
+-- ARGV[8..] one group per sensor bucket:
+--          type, hour, count, sum, min, minTimestamp, max, maxTimestamp, n,
+--          followed by n pairs of sketch bucket and count
+--
+-- Returns the number of buckets merged, or -1 if the merge was skipped by the guard.
+
+local key = KEYS[1]
+local buckets = tonumber(ARGV[3])
+local currentHour = tonumber(ARGV[4])
+local merged = 0
+local group = 1
+local i = 8
+
+if ARGV[6] ~= '' then
+    local applied = tonumber(redis.call('HGET', key, ARGV[6]))
+    if applied ~= nil and applied >= tonumber(ARGV[7]) then
+        return -1
+    end
+    redis.call('HSET', key, ARGV[6], ARGV[7])
+end
+
+redis.call('HSET', key, 'owner', ARGV[1], 'floraLinkId', ARGV[2])
+
+while i <= #ARGV do
+    local hour = tonumber(ARGV[i + 1])
+    local sketchBuckets = tonumber(ARGV[i + 8])
+
+    if hour > currentHour - buckets and hour <= currentHour then
+        local prefix = ARGV[i] .. ':' .. (hour % buckets) .. ':'
+        local current = redis.call('HMGET', key, prefix .. 'hour', prefix .. 'min', prefix .. 'max')
+        local storedHour = tonumber(current[1])
+
+        if storedHour == nil or storedHour < hour then
+            redis.call('HSET', key,
+                    prefix .. 'hour', ARGV[i + 1],
+                    prefix .. 'count', ARGV[i + 2],
+                    prefix .. 'sum', ARGV[i + 3],
+                    prefix .. 'min', ARGV[i + 4], prefix .. 'minTs', ARGV[i + 5],
+                    prefix .. 'max', ARGV[i + 6], prefix .. 'maxTs', ARGV[i + 7])
+            merged = merged + 1
+        elseif storedHour == hour then
+            redis.call('HINCRBY', key, prefix .. 'count', ARGV[i + 2])
+            redis.call('HINCRBYFLOAT', key, prefix .. 'sum', ARGV[i + 3])
+
+            if tonumber(ARGV[i + 4]) < tonumber(current[2]) then
+                redis.call('HSET', key, prefix .. 'min', ARGV[i + 4], prefix .. 'minTs', ARGV[i + 5])
+            end
+
+            if tonumber(ARGV[i + 6]) > tonumber(current[3]) then
+                redis.call('HSET', key, prefix .. 'max', ARGV[i + 6], prefix .. 'maxTs', ARGV[i + 7])
+            end
+
+            merged = merged + 1
+        end
+
+        if storedHour == nil or storedHour <= hour then
+            local sketchKey = KEYS[group + 1]
+            for j = i + 9, i + 8 + sketchBuckets * 2, 2 do
+                redis.call('HINCRBY', sketchKey, ARGV[j], ARGV[j + 1])
+            end
+            redis.call('PEXPIRE', sketchKey, ARGV[5])
+        end
+    end
+
+    group = group + 1
+    i = i + 9 + sketchBuckets * 2
+end
+
+redis.call('PEXPIRE', key, ARGV[5])
+
+return merged
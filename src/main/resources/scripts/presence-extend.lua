@@ -0,0 +1,21 @@
+-- Extends the presence hashes of the FloraLinks connected to the refreshing node. A key another node
+-- owns is only taken over if the refreshing node received a frame from the FloraLink more recently, so
+-- a node holding a stale session never takes a FloraLink back from the node it reconnected to, while
+-- the node holding the live session wins it back. Keys that expired, e.g. while Redis was
+-- unavailable, are registered again.
+-- KEYS presence keys, ARGV[1] node id, ARGV[2] ttl in milliseconds,
+-- ARGV[3..] when the node last received a frame from each FloraLink, in the order of KEYS
+-- Returns the 1-based indexes of the keys left to another node.
+local lost = {}
+for index, key in ipairs(KEYS) do
+    local seen = ARGV[index + 2]
+    local current = redis.call('HMGET', key, 'node', 'seen')
+    local owner = current[1]
+    if owner == ARGV[1] or not owner or tonumber(seen) > (tonumber(current[2]) or 0) then
+        redis.call('HSET', key, 'node', ARGV[1], 'seen', seen)
+        redis.call('PEXPIRE', key, ARGV[2])
+    else
+        table.insert(lost, index)
+    end
+end
+return lost
@@ -0,0 +1,7 @@
+-- Deletes a presence hash only while it still names the releasing node, so a node that lost a
+-- session never removes the presence another node registered after a reconnect.
+-- KEYS[1] presence key, ARGV[1] node id
+if redis.call('HGET', KEYS[1], 'node') == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,136 @@
+package pl.Dayfit.Florae.Handlers.Decoders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorFrameDecoderTest {
+    private final SensorFrameDecoder decoder = new SensorFrameDecoder(new ObjectMapper());
+
+    @Test
+    void decode_numericAndQuotedValues_fillsFrame() throws IOException {
+        SensorFrame frame = new SensorFrame();
+        Instant now = Instant.now();
+
+        decoder.decode("[{\"type\":\"SOIL_MOISTURE\",\"value\":41.5},{\"type\":\"LIGHT_LUX\",\"value\":\"1200\"}]", frame, now);
+
+        assertEquals(2, frame.size());
+        assertEquals(41.5, frame.get(SensorDataType.SOIL_MOISTURE));
+        assertEquals(1200.0, frame.get(SensorDataType.LIGHT_LUX));
+        assertFalse(frame.has(SensorDataType.ENV_HUMIDITY));
+        assertEquals(now, frame.getReceivedAt());
+    }
+
+    @Test
+    void decode_unknownTypeOrMissingValue_skipsEntry() throws IOException {
+        SensorFrame frame = new SensorFrame();
+
+        decoder.decode("[{\"type\":\"CO2\",\"value\":400},{\"type\":\"ENV_HUMIDITY\"},{\"value\":1,\"type\":\"ENV_TEMPERATURE\",\"unit\":{\"name\":\"C\"}}]", frame, Instant.now());
+
+        assertEquals(1, frame.size());
+        assertEquals(2, frame.getSkippedCount());
+        assertEquals(1.0, frame.get(SensorDataType.ENV_TEMPERATURE));
+    }
+
+    @Test
+    void decode_objectOrArrayTypeOrValue_skipsEntryWithItsChildren() throws IOException {
+        SensorFrame frame = new SensorFrame();
+
+        decoder.decode("[{\"type\":\"LIGHT_LUX\",\"value\":{\"type\":\"SOIL_MOISTURE\",\"value\":1}},"
+                + "{\"type\":[\"ENV_HUMIDITY\"],\"value\":[2,3]},{\"type\":\"ENV_TEMPERATURE\",\"value\":21}]", frame, Instant.now());
+
+        assertEquals(1, frame.size());
+        assertEquals(2, frame.getSkippedCount());
+        assertEquals(21.0, frame.get(SensorDataType.ENV_TEMPERATURE));
+    }
+
+    @Test
+    void decode_reusedFrame_discardsPreviousReadings() throws IOException {
+        SensorFrame frame = new SensorFrame();
+
+        decoder.decode("[{\"type\":\"SOIL_MOISTURE\",\"value\":10}]", frame, Instant.now());
+        decoder.decode("[{\"type\":\"LIGHT_LUX\",\"value\":5}]", frame, Instant.now());
+
+        assertFalse(frame.has(SensorDataType.SOIL_MOISTURE));
+        assertEquals(1, frame.toDataList().size());
+    }
+
+    @Test
+    void decode_notAnArray_throws() {
+        assertThrows(IOException.class, () -> decoder.decode("{\"type\":\"LIGHT_LUX\"}", new SensorFrame(), Instant.now()));
+    }
+
+    @Test
+    void decodeBinary_withDeviceTimestamp_fillsFrame() throws IOException {
+        SensorFrame frame = new SensorFrame();
+        Instant now = Instant.now();
+        long sampledAt = now.minusSeconds(60).toEpochMilli();
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + Long.BYTES + 1 + 2 * 5).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) SensorFrameDecoder.BINARY_VERSION)
+                .put((byte) SensorFrameDecoder.FLAG_DEVICE_TIMESTAMP)
+                .putLong(sampledAt)
+                .put((byte) 2)
+                .put((byte) SensorDataType.SOIL_MOISTURE.getId()).putFloat(33.5f)
+                .put((byte) 99).putFloat(1f);
+
+        decoder.decode(buffer.flip(), frame, now);
+
+        assertEquals(1, frame.size());
+        assertEquals(1, frame.getSkippedCount());
+        assertEquals(33.5, frame.get(SensorDataType.SOIL_MOISTURE));
+        assertEquals(Instant.ofEpochMilli(sampledAt), frame.getSampledAt());
+    }
+
+    @Test
+    void decodeBinary_futureDeviceTimestamp_fallsBackToReceiveTime() throws IOException {
+        SensorFrame frame = new SensorFrame();
+        Instant now = Instant.now();
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + Long.BYTES + 1).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) SensorFrameDecoder.BINARY_VERSION)
+                .put((byte) SensorFrameDecoder.FLAG_DEVICE_TIMESTAMP)
+                .putLong(now.plusSeconds(3600).toEpochMilli())
+                .put((byte) 0);
+
+        decoder.decode(buffer.flip(), frame, now);
+
+        assertTrue(frame.isEmpty());
+        assertEquals(now, frame.getSampledAt());
+    }
+
+    @Test
+    void decodeBinary_unsyncedDeviceTimestamp_fallsBackToReceiveTime() throws IOException {
+        SensorFrame frame = new SensorFrame();
+        Instant now = Instant.now();
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + Long.BYTES + 1).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) SensorFrameDecoder.BINARY_VERSION)
+                .put((byte) SensorFrameDecoder.FLAG_DEVICE_TIMESTAMP)
+                .putLong(0L)
+                .put((byte) 0);
+
+        decoder.decode(buffer.flip(), frame, now);
+
+        assertEquals(now, frame.getSampledAt());
+    }
+
+    @Test
+    void decodeBinary_truncatedReadings_throws() {
+        ByteBuffer buffer = ByteBuffer.allocate(4)
+                .put((byte) SensorFrameDecoder.BINARY_VERSION)
+                .put((byte) 0)
+                .put((byte) 3)
+                .put((byte) SensorDataType.LIGHT_LUX.getId());
+
+        assertThrows(ProtocolException.class, () -> decoder.decode(buffer.flip(), new SensorFrame(), Instant.now()));
+    }
+}
@@ -0,0 +1,27 @@
+package pl.Dayfit.Florae.Handlers.Handshake;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketHandler;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrameDecoder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ApiHandshakeHandlerTest {
+    private final ApiHandshakeHandler handler = new ApiHandshakeHandler();
+    private final WebSocketHandler webSocketHandler = mock(WebSocketHandler.class);
+
+    @Test
+    void selectProtocol_binaryOfferedAfterJson_selectsBinary() {
+        assertEquals(SensorFrameDecoder.BINARY_PROTOCOL,
+                handler.selectProtocol(List.of(SensorFrameDecoder.JSON_PROTOCOL, SensorFrameDecoder.BINARY_PROTOCOL), webSocketHandler));
+    }
+
+    @Test
+    void selectProtocol_onlyJsonOrNothingOffered_fallsBack() {
+        assertEquals(SensorFrameDecoder.JSON_PROTOCOL, handler.selectProtocol(List.of("unknown", SensorFrameDecoder.JSON_PROTOCOL), webSocketHandler));
+        assertNull(handler.selectProtocol(List.of(), webSocketHandler));
+    }
+}
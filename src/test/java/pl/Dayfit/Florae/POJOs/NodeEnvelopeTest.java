@@ -0,0 +1,29 @@
+package pl.Dayfit.Florae.POJOs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeEnvelopeTest {
+    @Test
+    void parse_roundTripsChannelAndPayload() {
+        byte[] payload = "{\"sensorId\":1}".getBytes(StandardCharsets.UTF_8);
+
+        NodeEnvelope parsed = NodeEnvelope.parse(new NodeEnvelope("user.żaneta", payload).toByteArray());
+
+        assertEquals("user.żaneta", parsed.channel());
+        assertArrayEquals(payload, parsed.payload());
+    }
+
+    @Test
+    void parse_truncatedChannel_throws() {
+        byte[] bytes = new NodeEnvelope("floralink.42", new byte[0]).toByteArray();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertThrows(IllegalArgumentException.class, () -> NodeEnvelope.parse(truncated));
+        assertThrows(IllegalArgumentException.class, () -> NodeEnvelope.parse(new byte[1]));
+    }
+}
@@ -0,0 +1,72 @@
+package pl.Dayfit.Florae.POJOs;
+
+import org.junit.jupiter.api.Test;
+import pl.Dayfit.Florae.Enums.SensorAlertType;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlantRulesTest {
+    private static final double NaN = Double.NaN;
+
+    private final PlantRequirementsSnapshot requirements = new PlantRequirementsSnapshot(NaN, NaN, 15, 25, NaN, NaN, 30, 50);
+    private final PlantRules rules = PlantRules.compile(requirements, 2.0);
+    private final DeviceContext context = new DeviceContext(1, 7, "owner", 2.0, requirements, rules);
+    private final PlantRules.State state = new PlantRules.State();
+    private final List<String> actions = new ArrayList<>();
+
+    private final PlantRules.ActionSink sink = new PlantRules.ActionSink() {
+        @Override
+        public void water(DeviceContext context, double milliliters) {
+            actions.add("water " + Math.round(milliliters));
+        }
+
+        @Override
+        public void alert(DeviceContext context, SensorDataType type, SensorAlertType alert, double value) {
+            actions.add(type + " " + alert);
+        }
+    };
+
+    @Test
+    void evaluate_soilMoistureBelowMin_alertsOnceAndWatersUntilCleared() {
+        evaluate(SensorDataType.SOIL_MOISTURE, 25);
+        assertEquals(List.of("SOIL_MOISTURE BELOW_MIN", "water 300"), actions);
+
+        actions.clear();
+        evaluate(SensorDataType.SOIL_MOISTURE, 30.5);
+        assertEquals(List.of("water 190"), actions, "still within the hysteresis band");
+
+        actions.clear();
+        evaluate(SensorDataType.SOIL_MOISTURE, 31);
+        assertEquals(List.of("SOIL_MOISTURE BACK_IN_RANGE"), actions);
+    }
+
+    @Test
+    void evaluate_valueJitteringAroundBound_doesNotFlap() {
+        evaluate(SensorDataType.ENV_TEMPERATURE, 25.5);
+        evaluate(SensorDataType.ENV_TEMPERATURE, 24.9);
+        evaluate(SensorDataType.ENV_TEMPERATURE, 25.2);
+        evaluate(SensorDataType.ENV_TEMPERATURE, 24.4);
+
+        assertEquals(List.of("ENV_TEMPERATURE ABOVE_MAX", "ENV_TEMPERATURE BACK_IN_RANGE"), actions);
+    }
+
+    @Test
+    void evaluate_missingBounds_neverTrigger() {
+        evaluate(SensorDataType.LIGHT_LUX, 1_000_000);
+        evaluate(SensorDataType.ENV_HUMIDITY, -5);
+
+        assertTrue(actions.isEmpty());
+    }
+
+    private void evaluate(SensorDataType type, double value) {
+        double[] values = new double[SensorDataType.values().length];
+        Arrays.fill(values, NaN);
+        values[type.ordinal()] = value;
+        rules.evaluate(context, values, state, sink);
+    }
+}
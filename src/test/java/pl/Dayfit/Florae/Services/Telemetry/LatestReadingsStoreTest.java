@@ -0,0 +1,82 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
+import pl.Dayfit.Florae.Repositories.Redis.LatestReadingsRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class LatestReadingsStoreTest {
+    private final LatestReadingsRepository repository = mock(LatestReadingsRepository.class);
+    private final LatestReadingsStore store = new LatestReadingsStore(repository, new MockEnvironment().withProperty("florae.fanout.deadband.LIGHT_LUX", "5"));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(store, "defaultDeadband", 0.5);
+        store.resolveDeadbands();
+    }
+
+    @Test
+    void update_firstReadings_areAllPublished() {
+        List<CurrentSensorDataDTO> changed = store.update(1, readings(40.0, 100.0));
+
+        assertEquals(List.of("SOIL_MOISTURE", "LIGHT_LUX"), changed.stream().map(CurrentSensorDataDTO::getType).toList());
+        verify(repository).save(1, Map.of("SOIL_MOISTURE", "40.0", "LIGHT_LUX", "100.0"));
+    }
+
+    @Test
+    void update_withinDeadband_isSuppressedUntilDriftExceedsIt() {
+        store.update(1, readings(40.0, 100.0));
+        clearInvocations(repository);
+
+        assertTrue(store.update(1, readings(40.4, 104.0)).isEmpty());
+        verify(repository, never()).save(anyInt(), anyMap());
+
+        List<CurrentSensorDataDTO> changed = store.update(1, readings(40.6, 104.0));
+
+        assertEquals(1, changed.size());
+        assertEquals("SOIL_MOISTURE", changed.getFirst().getType());
+        verify(repository).save(1, Map.of("SOIL_MOISTURE", "40.6"));
+    }
+
+    @Test
+    void update_afterReconnect_comparesAgainstRedisValues() {
+        store.update(1, readings(40.0, Double.NaN));
+        store.forget(new WebSocketConnectionClosedEvent(floraLinkSession(1), ConnectionType.FLORALINK));
+        when(repository.findAll(List.of(1))).thenReturn(Map.of(1, Map.of("SOIL_MOISTURE", "45.0")));
+
+        assertTrue(store.update(1, readings(45.2, Double.NaN)).isEmpty());
+        assertEquals(1, store.update(1, readings(40.0, Double.NaN)).size());
+    }
+
+    private static double[] readings(double soilMoisture, double lightLux) {
+        double[] values = new double[SensorDataType.values().length];
+        Arrays.fill(values, Double.NaN);
+        values[SensorDataType.SOIL_MOISTURE.ordinal()] = soilMoisture;
+        values[SensorDataType.LIGHT_LUX.ordinal()] = lightLux;
+        return values;
+    }
+
+    private static WebSocketSession floraLinkSession(int floraLinkId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("id", floraLinkId);
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+}
@@ -0,0 +1,68 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.Dayfit.Florae.Enums.SensorDataType;
+import pl.Dayfit.Florae.Handlers.Decoders.SensorFrame;
+import pl.Dayfit.Florae.POJOs.TelemetryChunk;
+import pl.Dayfit.Florae.Repositories.Redis.TelemetryChunkRepository;
+import pl.Dayfit.Florae.Utils.GorillaChunk;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RecentTelemetryStoreTest {
+    private final TelemetryChunkRepository repository = mock(TelemetryChunkRepository.class);
+    private final RecentTelemetryStore store = new RecentTelemetryStore(repository);
+    private final Instant now = Instant.now();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(store, "chunkPoints", 720);
+        ReflectionTestUtils.setField(store, "chunkSpanMillis", 7_200_000L);
+        when(repository.findChunks(anyInt(), any(), anyLong(), anyLong())).thenReturn(List.of());
+    }
+
+    @Test
+    void record_readingSampledBeforeTheLastOne_isDropped() {
+        store.record(1, frame(now.minusSeconds(60), 10));
+        store.record(1, frame(now.minusSeconds(120), 20));
+        store.record(1, frame(now.minusSeconds(30), 30));
+
+        long[] timestamps = new long[8];
+        double[] values = new double[8];
+
+        assertEquals(2, store.readPoints(1, SensorDataType.SOIL_MOISTURE, now.minusSeconds(600), now, timestamps, values));
+        assertArrayEquals(new double[] { 10, 30 }, new double[] { values[0], values[1] });
+    }
+
+    @Test
+    void readPoints_overlappingChunks_returnsOldestFirst() {
+        GorillaChunk stored = new GorillaChunk();
+        stored.append(now.minusSeconds(90).toEpochMilli(), 1);
+        stored.append(now.minusSeconds(30).toEpochMilli(), 3);
+        when(repository.findChunks(eq(1), eq(SensorDataType.SOIL_MOISTURE), anyLong(), anyLong()))
+                .thenReturn(List.of(new TelemetryChunk(1, SensorDataType.SOIL_MOISTURE, stored.getFirstTimestamp(), stored.toByteArray())));
+        store.record(1, frame(now.minusSeconds(60), 2));
+
+        long[] timestamps = new long[8];
+        double[] values = new double[8];
+
+        assertEquals(3, store.readPoints(1, SensorDataType.SOIL_MOISTURE, now.minusSeconds(600), now, timestamps, values));
+        assertArrayEquals(new double[] { 1, 2, 3 }, new double[] { values[0], values[1], values[2] });
+        assertTrue(timestamps[0] < timestamps[1] && timestamps[1] < timestamps[2]);
+    }
+
+    private static SensorFrame frame(Instant sampledAt, double soilMoisture) {
+        SensorFrame frame = mock(SensorFrame.class);
+        when(frame.getSampledAt()).thenReturn(sampledAt);
+        when(frame.has(SensorDataType.SOIL_MOISTURE)).thenReturn(true);
+        when(frame.get(SensorDataType.SOIL_MOISTURE)).thenReturn(soilMoisture);
+        return frame;
+    }
+}
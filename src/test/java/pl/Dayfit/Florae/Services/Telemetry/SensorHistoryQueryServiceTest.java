@@ -0,0 +1,36 @@
+package pl.Dayfit.Florae.Services.Telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import pl.Dayfit.Florae.Enums.RollupResolution;
+import pl.Dayfit.Florae.Repositories.JDBC.SensorRollupRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SensorHistoryQueryServiceTest {
+    private final SensorRollupService sensorRollupService = mock(SensorRollupService.class);
+    private final SensorHistoryQueryService service = new SensorHistoryQueryService(mock(SensorRollupRepository.class), sensorRollupService, mock(RecentTelemetryStore.class), new ObjectMapper());
+
+    @Test
+    void selectResolution_picksFinestFittingResolution() {
+        when(sensorRollupService.isRetained(any(), any())).thenReturn(true);
+        Instant to = Instant.now();
+
+        assertEquals(RollupResolution.MINUTE, service.selectResolution(to.minus(Duration.ofHours(2)), to, 500));
+        assertEquals(RollupResolution.HOUR, service.selectResolution(to.minus(Duration.ofDays(7)), to, 500));
+        assertEquals(RollupResolution.DAY, service.selectResolution(to.minus(Duration.ofDays(300)), to, 500));
+    }
+
+    @Test
+    void selectResolution_rangeExceedingDayBuckets_isRejected() {
+        when(sensorRollupService.isRetained(any(), any())).thenReturn(true);
+        Instant to = Instant.now();
+
+        assertThrows(IllegalArgumentException.class, () -> service.selectResolution(to.minus(Duration.ofDays(600)), to, 500));
+    }
+}
@@ -0,0 +1,79 @@
+package pl.Dayfit.Florae.Services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.Dayfit.Florae.Repositories.JPA.FloraLinkRepository;
+import pl.Dayfit.Florae.Repositories.Redis.WateringLeaseRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WateringServiceTest {
+    private final WateringLeaseRepository wateringLeaseRepository = mock(WateringLeaseRepository.class);
+    private final FloraLinkRepository floraLinkRepository = mock(FloraLinkRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("flora-link", "flora-links");
+    private final WateringService service = new WateringService(wateringLeaseRepository, floraLinkRepository, transactionTemplate, cacheManager);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "intervalMillis", 1_800_000L);
+        runTransactions();
+    }
+
+    @Test
+    void tryStartWatering_leaseTaken_isDenied() {
+        when(wateringLeaseRepository.tryAcquire(eq(1), any(), any())).thenReturn(false);
+
+        assertFalse(service.tryStartWatering(1));
+        service.flush();
+
+        verifyNoInteractions(floraLinkRepository);
+    }
+
+    @Test
+    void flush_storesLatestWateringDateAndEvictsCaches() {
+        when(wateringLeaseRepository.tryAcquire(eq(1), any(), any())).thenReturn(true);
+        when(floraLinkRepository.findOwnerIdsByFloraLinkIds(any())).thenReturn(List.of(42));
+        cacheManager.getCache("flora-link").put(1, "cached");
+        cacheManager.getCache("flora-links").put(42, "cached");
+
+        assertTrue(service.tryStartWatering(1));
+        Instant afterFirst = Instant.now();
+        assertTrue(service.tryStartWatering(1));
+        service.flush();
+
+        ArgumentCaptor<Instant> wateredAt = ArgumentCaptor.forClass(Instant.class);
+        verify(floraLinkRepository).updateWateringDate(eq(1), wateredAt.capture());
+        assertFalse(wateredAt.getValue().isBefore(afterFirst));
+        assertNull(cacheManager.getCache("flora-link").get(1));
+        assertNull(cacheManager.getCache("flora-links").get(42));
+    }
+
+    @Test
+    void flush_failure_keepsDatesForNextFlush() {
+        when(wateringLeaseRepository.tryAcquire(eq(1), any(), any())).thenReturn(true);
+        doThrow(new IllegalStateException("database down")).when(transactionTemplate).execute(any());
+
+        service.tryStartWatering(1);
+        service.flush();
+
+        runTransactions();
+        service.flush();
+
+        verify(floraLinkRepository).updateWateringDate(eq(1), any());
+    }
+
+    private void runTransactions() {
+        doAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null)).when(transactionTemplate).execute(any());
+    }
+}
@@ -0,0 +1,63 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorDataDTO;
+import pl.Dayfit.Florae.DTOs.Sensors.CurrentSensorResponseDataDTO;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DashboardCoalescerTest {
+    private final FanoutPublisher fanoutPublisher = mock(FanoutPublisher.class);
+    private final PresenceRegistry presenceRegistry = mock(PresenceRegistry.class);
+    private final DashboardCoalescer coalescer = new DashboardCoalescer(fanoutPublisher, presenceRegistry);
+
+    @BeforeEach
+    void setUp() {
+        when(presenceRegistry.findUserNodes("alice")).thenReturn(Set.of("node-a"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_sendsLatestReadingsPerFloraLinkInOneFrame() {
+        coalescer.offer("alice", 1, List.of(new CurrentSensorDataDTO("SOIL_MOISTURE", 40.0), new CurrentSensorDataDTO("LIGHT_LUX", 100.0)));
+        coalescer.offer("alice", 1, List.of(new CurrentSensorDataDTO("SOIL_MOISTURE", 42.0)));
+        coalescer.offer("alice", 2, List.of(new CurrentSensorDataDTO("LIGHT_LUX", 5.0)));
+
+        coalescer.flush();
+
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(fanoutPublisher).publishToUser(eq("alice"), frame.capture());
+
+        List<CurrentSensorResponseDataDTO> readings = (List<CurrentSensorResponseDataDTO>) frame.getValue();
+        assertEquals(2, readings.size());
+
+        CurrentSensorResponseDataDTO first = readings.stream().filter(reading -> reading.getSensorId() == 1).findFirst().orElseThrow();
+        assertEquals(2, first.getSensorData().size());
+        assertEquals(42.0, first.getSensorData().getFirst().getValue());
+    }
+
+    @Test
+    void flush_withoutNewReadings_sendsNothing() {
+        coalescer.offer("alice", 1, List.of(new CurrentSensorDataDTO("SOIL_MOISTURE", 40.0)));
+        coalescer.flush();
+        coalescer.flush();
+
+        verify(fanoutPublisher, times(1)).publishToUser(eq("alice"), any());
+    }
+
+    @Test
+    void offer_userWithoutDashboard_isNotBuffered() {
+        when(presenceRegistry.findUserNodes("bob")).thenReturn(Set.of());
+
+        coalescer.offer("bob", 1, List.of(new CurrentSensorDataDTO("SOIL_MOISTURE", 40.0)));
+        coalescer.flush();
+
+        verifyNoInteractions(fanoutPublisher);
+    }
+}
@@ -0,0 +1,131 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionClosedEvent;
+import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Handlers.Channels.ChannelMessagingHandler;
+import pl.Dayfit.Florae.Repositories.Redis.CommandStreamRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DeviceCommandServiceTest {
+    private final CommandStreamRepository commandStreamRepository = mock(CommandStreamRepository.class);
+    private final ChannelMessagingHandler channelMessagingHandler = mock(ChannelMessagingHandler.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeviceCommandService service = new DeviceCommandService(commandStreamRepository, channelMessagingHandler, objectMapper, meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "maxAgeMillis", 600_000L);
+        ReflectionTestUtils.setField(service, "blockMillis", 10L);
+    }
+
+    @Test
+    void acknowledge_knownCommand_recordsRoundTrip() throws Exception {
+        String commandId = (System.currentTimeMillis() - 50) + "-0";
+        when(commandStreamRepository.acknowledge(7, commandId)).thenReturn(Map.of("type", "WATERING"));
+
+        service.acknowledge(7, "{\"ack\": \"" + commandId + "\"}");
+
+        assertEquals(1, meterRegistry.get("florae.commands.round-trip").tag("type", "WATERING").timer().count());
+    }
+
+    @Test
+    void acknowledge_unknownOrMalformedCommand_recordsNothing() throws Exception {
+        when(commandStreamRepository.acknowledge(7, "1-0")).thenReturn(null);
+        when(commandStreamRepository.acknowledge(7, "garbage")).thenThrow(new IllegalArgumentException("Invalid id"));
+
+        service.acknowledge(7, "{\"ack\": \"1-0\"}");
+        service.acknowledge(7, "{\"ack\": \"garbage\"}");
+        service.acknowledge(7, "{\"other\": 1}");
+
+        assertTrue(meterRegistry.find("florae.commands.round-trip").timers().isEmpty());
+    }
+
+    @Test
+    void poll_sendsCommandsOfConnectedDevicesOldestFirstWithTheirIds() throws Exception {
+        Map<Object, Object> watering = Map.of("type", "WATERING", "value", "150.0");
+        Map<Object, Object> enableBle = Map.of("type", "ENABLE_BLE");
+        when(commandStreamRepository.read(anyMap(), anyInt(), any())).thenReturn(Map.of(7, List.of(
+                MapRecord.create("floralink-commands:7", watering).withId(RecordId.of("1000-0")),
+                MapRecord.create("floralink-commands:7", enableBle).withId(RecordId.of("1000-1"))
+        )));
+        service.register(new WebSocketConnectionEstablishedEvent(floraLinkSession(7), ConnectionType.FLORALINK));
+
+        assertEquals(2, service.poll());
+
+        ArgumentCaptor<byte[]> payloads = ArgumentCaptor.forClass(byte[].class);
+        verify(channelMessagingHandler, times(2)).deliver(eq("floralink.7"), payloads.capture());
+
+        JsonNode first = objectMapper.readTree(payloads.getAllValues().getFirst());
+        assertEquals("1000-0", first.get("id").asText());
+        assertEquals(150.0, first.get("value").asDouble());
+
+        JsonNode second = objectMapper.readTree(payloads.getAllValues().get(1));
+        assertEquals("ENABLE_BLE", second.get("type").asText());
+        assertEquals("1000-1", second.get("id").asText());
+    }
+
+    @Test
+    void poll_continuesAfterLastCommandAndRewindsForRedelivery() {
+        when(commandStreamRepository.read(anyMap(), anyInt(), any())).thenReturn(Map.of(7, List.of(
+                MapRecord.create("floralink-commands:7", Map.<Object, Object>of("type", "ENABLE_BLE")).withId(RecordId.of("1000-0"))
+        )));
+        service.register(new WebSocketConnectionEstablishedEvent(floraLinkSession(7), ConnectionType.FLORALINK));
+
+        service.poll();
+        service.poll();
+        service.rewind();
+        service.poll();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Integer, String>> cursors = ArgumentCaptor.forClass(Map.class);
+        verify(commandStreamRepository, times(3)).read(cursors.capture(), anyInt(), any());
+        assertNotEquals("1000-0", cursors.getAllValues().getFirst().get(7));
+        assertEquals("1000-0", cursors.getAllValues().get(1).get(7));
+        assertNotEquals("1000-0", cursors.getAllValues().get(2).get(7));
+    }
+
+    @Test
+    void poll_disconnectedDevice_isNotRead() {
+        WebSocketSession session = floraLinkSession(7);
+        service.register(new WebSocketConnectionEstablishedEvent(session, ConnectionType.FLORALINK));
+        service.unregister(new WebSocketConnectionClosedEvent(session, ConnectionType.FLORALINK));
+
+        assertEquals(0, service.poll());
+        verify(commandStreamRepository, never()).read(anyMap(), anyInt(), any());
+    }
+
+    @Test
+    void register_userSession_isIgnored() {
+        service.register(new WebSocketConnectionEstablishedEvent(mock(WebSocketSession.class), ConnectionType.USER));
+
+        assertEquals(0, service.poll());
+        verifyNoInteractions(commandStreamRepository, channelMessagingHandler);
+    }
+
+    private static WebSocketSession floraLinkSession(int floraLinkId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("id", floraLinkId);
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+}
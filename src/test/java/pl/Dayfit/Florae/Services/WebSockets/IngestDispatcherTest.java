@@ -0,0 +1,113 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.Enums.MailboxOverflowPolicy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IngestDispatcherTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IngestDispatcher dispatcher = new IngestDispatcher(meterRegistry);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(dispatcher, "mailboxCapacity", 4);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn("session");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void dispatch_processesFramesInArrivalOrder() throws InterruptedException {
+        ReflectionTestUtils.setField(dispatcher, "overflowPolicy", MailboxOverflowPolicy.DROP_NEWEST);
+        ReflectionTestUtils.setField(dispatcher, "mailboxCapacity", 100);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++)
+        {
+            dispatcher.dispatch(session, new TextMessage(Integer.toString(i)), (ignored, message) ->
+            {
+                processed.add((String) message.getPayload());
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(Integer.toString(i), processed.get(i));
+        }
+    }
+
+    @Test
+    void dispatch_fullMailboxWithDropOldest_keepsNewestFrames() throws InterruptedException {
+        ReflectionTestUtils.setField(dispatcher, "overflowPolicy", MailboxOverflowPolicy.DROP_OLDEST);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+
+        IngestDispatcher.MessageProcessor processor = (ignored, message) ->
+        {
+            if (message.getPayload().equals("first"))
+            {
+                blocked.countDown();
+                release.await();
+            }
+
+            processed.add((String) message.getPayload());
+            done.countDown();
+        };
+
+        dispatcher.dispatch(session, new TextMessage("first"), processor);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 6; i++)
+        {
+            dispatcher.dispatch(session, new TextMessage(Integer.toString(i)), processor);
+        }
+
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "2", "3", "4", "5"), processed);
+        assertEquals(2, dispatcher.getDroppedFrames());
+        assertEquals(2, meterRegistry.get("florae.ingest.dropped").tag("policy", "DROP_OLDEST").counter().count());
+    }
+
+    @Test
+    void dispatch_fullMailboxWithCloseSession_closesSession() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "overflowPolicy", MailboxOverflowPolicy.CLOSE_SESSION);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 6; i++)
+        {
+            dispatcher.dispatch(session, new TextMessage(Integer.toString(i)), (ignored, message) -> release.await());
+        }
+
+        release.countDown();
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+}
@@ -0,0 +1,73 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+import pl.Dayfit.Florae.Enums.ConnectionType;
+import pl.Dayfit.Florae.Events.WebSocketConnectionEstablishedEvent;
+import pl.Dayfit.Florae.Repositories.Redis.PresenceRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceRegistryTest {
+    private final PresenceRepository presenceRepository = mock(PresenceRepository.class);
+    private final SessionService sessionService = mock(SessionService.class);
+    private final NodeIdentity nodeIdentity = new NodeIdentity("node-a");
+    private final PresenceRegistry registry = new PresenceRegistry(presenceRepository, nodeIdentity, sessionService);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(registry, "ttlMillis", 30_000L);
+        ReflectionTestUtils.setField(registry, "nearCacheMillis", 0L);
+    }
+
+    @Test
+    void heartbeat_reportsWhenTheOpenLocalSessionLastReceivedAFrame() {
+        DeviceContextRegistry.Holder holder = new DeviceContextRegistry.Holder(null);
+        holder.markFrame(1_000L);
+        WebSocketSession session = session(holder);
+        connect(7, session);
+        when(sessionService.getSessions("floralink.7")).thenReturn(Set.of(new SessionOutbox(session, Runnable::run, 1)));
+        when(presenceRepository.extend(any(), any(), any(), any())).thenReturn(List.of());
+
+        registry.heartbeat();
+
+        verify(presenceRepository).extend(eq(List.of(7)), eq(List.of(1_000L)), eq("node-a"), any());
+        assertEquals("node-a", registry.findNode(7));
+    }
+
+    @Test
+    void heartbeat_floraLinkLeftToAnotherNode_isNoLongerLocal() {
+        connect(7, session(new DeviceContextRegistry.Holder(null)));
+        when(sessionService.getSessions("floralink.7")).thenReturn(Set.of());
+        when(presenceRepository.extend(any(), any(), any(), any())).thenReturn(List.of(7));
+        when(presenceRepository.findNode(7)).thenReturn("node-b");
+
+        registry.heartbeat();
+
+        verify(presenceRepository).extend(eq(List.of(7)), eq(List.of(0L)), eq("node-a"), any());
+        assertEquals("node-b", registry.findNode(7));
+    }
+
+    private void connect(int floraLinkId, WebSocketSession session) {
+        session.getAttributes().put("id", floraLinkId);
+        registry.register(new WebSocketConnectionEstablishedEvent(session, ConnectionType.FLORALINK));
+    }
+
+    private static WebSocketSession session(DeviceContextRegistry.Holder holder) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(DeviceContextRegistry.CONTEXT_ATTRIBUTE, holder);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,48 @@
+package pl.Dayfit.Florae.Services.WebSockets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SessionOutboxTest {
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final SessionOutbox outbox = new SessionOutbox(session, scheduled::add, 2);
+
+    @Test
+    void send_drainsInOrderOnExecutor() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+
+        assertTrue(outbox.send(new TextMessage("a")));
+        assertTrue(outbox.send(new TextMessage("b")));
+        verify(session, never()).sendMessage(any());
+        assertEquals(1, scheduled.size());
+
+        scheduled.getFirst().run();
+
+        var inOrder = inOrder(session);
+        inOrder.verify(session).sendMessage(new TextMessage("a"));
+        inOrder.verify(session).sendMessage(new TextMessage("b"));
+    }
+
+    @Test
+    void send_fullQueue_evictsSession() throws Exception {
+        outbox.send(new TextMessage("a"));
+        outbox.send(new TextMessage("b"));
+
+        assertFalse(outbox.send(new TextMessage("c")));
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        assertFalse(outbox.send(new TextMessage("d")));
+        scheduled.getFirst().run();
+        verify(session, never()).sendMessage(any(WebSocketMessage.class));
+    }
+}
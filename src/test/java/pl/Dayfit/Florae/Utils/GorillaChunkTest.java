@@ -0,0 +1,75 @@
+package pl.Dayfit.Florae.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GorillaChunkTest {
+    @Test
+    void cursor_regularReadings_roundTripsAndCompresses() {
+        GorillaChunk chunk = new GorillaChunk();
+        long[] timestamps = new long[720];
+        double[] values = new double[720];
+        long timestamp = 1_700_000_000_000L;
+
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            timestamp += 10_000;
+            timestamps[i] = timestamp;
+            values[i] = 40 + (i / 60) * 0.5;
+            chunk.append(timestamps[i], values[i]);
+        }
+
+        GorillaChunk.Cursor cursor = GorillaChunk.cursor(chunk.toByteArray());
+
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            assertTrue(cursor.next());
+            assertEquals(timestamps[i], cursor.getTimestamp());
+            assertEquals(values[i], cursor.getValue());
+        }
+
+        assertFalse(cursor.next());
+        assertTrue(chunk.sizeInBytes() < timestamps.length * 2, "expected under 2 bytes per point, got " + chunk.sizeInBytes());
+    }
+
+    @Test
+    void cursor_irregularReadings_roundTrips() {
+        GorillaChunk chunk = new GorillaChunk();
+        Random random = new Random(42);
+        long[] timestamps = new long[500];
+        double[] values = new double[500];
+        long timestamp = 1_700_000_000_000L;
+
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            timestamp += switch (i % 4) {
+                case 0 -> random.nextInt(100);
+                case 1 -> 5_000 + random.nextInt(500);
+                case 2 -> -random.nextInt(3_000);
+                default -> random.nextInt(10_000_000);
+            };
+            timestamps[i] = timestamp;
+            values[i] = i % 7 == 0 ? -random.nextDouble() * 1e6 : random.nextGaussian();
+            chunk.append(timestamps[i], values[i]);
+        }
+
+        GorillaChunk.Cursor cursor = chunk.cursor();
+
+        for (int i = 0; i < timestamps.length; i++)
+        {
+            assertTrue(cursor.next());
+            assertEquals(timestamps[i], cursor.getTimestamp());
+            assertEquals(values[i], cursor.getValue());
+        }
+
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    void cursor_emptyChunk_hasNoPoints() {
+        assertFalse(new GorillaChunk().cursor().next());
+    }
+}
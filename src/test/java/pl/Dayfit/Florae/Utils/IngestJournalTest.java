@@ -0,0 +1,77 @@
+package pl.Dayfit.Florae.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestJournalTest {
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_acrossSegments_returnsRecordsInOrderAndDeletesConsumedSegments() throws IOException {
+        IngestJournal journal = new IngestJournal(directory, SEGMENT_SIZE);
+
+        for (int i = 0; i < 40; i++)
+        {
+            journal.append(ByteBuffer.allocate(Integer.BYTES + 20).putInt(i).position(0));
+        }
+
+        List<Integer> replayed = new ArrayList<>();
+        assertEquals(40, journal.replay(Integer.MAX_VALUE, (position, payload) -> replayed.add(payload.getInt())));
+
+        assertEquals(40, replayed.size());
+        for (int i = 0; i < 40; i++)
+        {
+            assertEquals(i, replayed.get(i));
+        }
+
+        assertFalse(journal.hasPending());
+        try (var files = Files.list(directory))
+        {
+            assertTrue(files.filter(path -> path.toString().endsWith(".segment")).count() <= 1);
+        }
+    }
+
+    @Test
+    void replay_handlerRejects_stopsAndResumesAfterReopen() throws IOException {
+        IngestJournal journal = new IngestJournal(directory, SEGMENT_SIZE);
+        for (int i = 0; i < 5; i++)
+        {
+            journal.append(ByteBuffer.allocate(Integer.BYTES).putInt(0, i));
+        }
+
+        assertEquals(2, journal.replay(Integer.MAX_VALUE, (position, payload) -> payload.getInt() < 2));
+        journal.close();
+
+        IngestJournal reopened = new IngestJournal(directory, SEGMENT_SIZE);
+        assertEquals(journal.getId(), reopened.getId());
+        assertTrue(reopened.hasPending());
+
+        List<Integer> replayed = new ArrayList<>();
+        reopened.replay(Integer.MAX_VALUE, (position, payload) -> replayed.add(payload.getInt()));
+        assertEquals(List.of(2, 3, 4), replayed);
+
+        reopened.append(ByteBuffer.allocate(Integer.BYTES).putInt(0, 5));
+        replayed.clear();
+        reopened.replay(Integer.MAX_VALUE, (position, payload) -> replayed.add(payload.getInt()));
+        assertEquals(List.of(5), replayed);
+    }
+
+    @Test
+    void append_recordLargerThanSegment_throws() throws IOException {
+        IngestJournal journal = new IngestJournal(directory, SEGMENT_SIZE);
+
+        assertThrows(IllegalArgumentException.class, () -> journal.append(ByteBuffer.allocate(SEGMENT_SIZE)));
+    }
+}
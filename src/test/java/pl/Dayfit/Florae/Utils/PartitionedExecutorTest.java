@@ -0,0 +1,114 @@
+package pl.Dayfit.Florae.Utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedExecutorTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void submit_sameKey_handledInOrder() throws InterruptedException {
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+
+        try (PartitionedExecutor<int[]> executor = new PartitionedExecutor<>("test", 3, 1000, 16, batch ->
+                batch.forEach(item -> handled.computeIfAbsent(item[0], key -> new CopyOnWriteArrayList<>()).add(item[1])), meterRegistry))
+        {
+            for (int i = 0; i < 200; i++)
+            {
+                assertTrue(executor.submit(i % 5, new int[] { i % 5, i }));
+            }
+        }
+
+        for (List<Integer> values : handled.values())
+        {
+            assertEquals(40, values.size());
+
+            for (int i = 1; i < values.size(); i++)
+            {
+                assertTrue(values.get(i - 1) < values.get(i));
+            }
+        }
+
+        assertEquals(200, meterRegistry.find("test.lane.processed").counters().stream().mapToDouble(counter -> counter.count()).sum());
+    }
+
+    @Test
+    void submit_fullLane_rejectsAndCounts() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        try (PartitionedExecutor<Integer> executor = new PartitionedExecutor<>("test", 1, 2, 16, batch ->
+        {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }, meterRegistry))
+        {
+            assertTrue(executor.submit(0, 0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertTrue(executor.submit(0, 1));
+            assertTrue(executor.submit(0, 2));
+            assertFalse(executor.submit(0, 3));
+            assertEquals(1, meterRegistry.get("test.lane.rejected").tag("lane", "0").counter().count());
+
+            release.countDown();
+        }
+    }
+
+    @Test
+    void submitWithTimeout_fullLane_waitsForSpace() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+
+        try (PartitionedExecutor<Integer> executor = new PartitionedExecutor<>("test", 1, 1, 16, batch ->
+        {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            handled.addAll(batch);
+        }, meterRegistry))
+        {
+            assertTrue(executor.submit(0, 0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(executor.submit(0, 1));
+
+            assertFalse(executor.submit(0, 2, 50));
+
+            Thread.ofVirtual().start(() ->
+            {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+
+                release.countDown();
+            });
+
+            assertTrue(executor.submit(0, 3, 5_000));
+        }
+
+        assertEquals(List.of(0, 1, 3), handled);
+        assertEquals(1, meterRegistry.get("test.lane.rejected").tag("lane", "0").counter().count());
+    }
+}
@@ -0,0 +1,82 @@
+package pl.Dayfit.Florae.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+    private static final double TOLERANCE = QuantileSketch.RELATIVE_ACCURACY;
+
+    @Test
+    void quantile_uniformValues_withinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (int i = 1; i <= 10_000; i++)
+        {
+            sketch.add(i);
+        }
+
+        assertEquals(10_000, sketch.getCount());
+        assertEquals(500, sketch.quantile(0.05), 500 * TOLERANCE + 1);
+        assertEquals(5_000, sketch.quantile(0.5), 5_000 * TOLERANCE + 1);
+        assertEquals(9_500, sketch.quantile(0.95), 9_500 * TOLERANCE + 1);
+    }
+
+    @Test
+    void quantile_negativeAndZeroValues_orderedCorrectly() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (int i = -50; i <= 50; i++)
+        {
+            sketch.add(i);
+        }
+
+        assertEquals(-45, sketch.quantile(0.05), 45 * TOLERANCE);
+        assertEquals(0, sketch.quantile(0.5));
+        assertEquals(45, sketch.quantile(0.95), 45 * TOLERANCE);
+    }
+
+    @Test
+    void merge_equalsSketchOfAllValues() {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        QuantileSketch all = new QuantileSketch();
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            double value = 10 + i * 0.37;
+            (i % 3 == 0 ? first : second).add(value);
+            all.add(value);
+        }
+
+        first.merge(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.quantile(0.05), first.quantile(0.05));
+        assertEquals(all.quantile(0.5), first.quantile(0.5));
+        assertEquals(all.quantile(0.95), first.quantile(0.95));
+    }
+
+    @Test
+    void addBucket_roundTripsThroughBucketKeys() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(-3.5);
+        sketch.add(0);
+        sketch.add(0.25);
+        sketch.add(1200, 4);
+
+        QuantileSketch restored = new QuantileSketch();
+        sketch.forEachBucket(restored::addBucket);
+
+        assertEquals(sketch.getCount(), restored.getCount());
+        for (double quantile : new double[]{0, 0.2, 0.4, 0.6, 1})
+        {
+            assertEquals(sketch.quantile(quantile), restored.quantile(quantile));
+        }
+    }
+
+    @Test
+    void quantile_emptySketch_returnsNaN() {
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+}